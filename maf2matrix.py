@@ -4,6 +4,7 @@ from __future__ import print_function
 
 import argparse
 import os
+import socket
 import subprocess
 import sys
 from subprocess import *
@@ -36,6 +37,27 @@ def execute(cmd):
         return process.returncode
 
 
+def submit_to_server(port, maf_file, directory):
+    # Runs the conversion on a warm conversion server (PanCanMAFToMatrix -server)
+    conn = socket.create_connection(("127.0.0.1", port))
+    stream = conn.makefile("rw")
+
+    def request(*fields):
+        stream.write("\t".join(fields) + "\n")
+        stream.flush()
+        return stream.readline().strip()
+
+    reply = request("SUBMIT", os.path.abspath(maf_file), os.path.abspath(directory))
+    if not reply.startswith("OK"):
+        conn.close()
+        raise RuntimeError(reply)
+    status = request("WAIT", reply.split()[1])
+    conn.close()
+    if " DONE" not in status:
+        raise RuntimeError(status)
+    return status
+
+
 if __name__ == "__main__":
     parser = argparse.ArgumentParser()
 
@@ -48,6 +70,11 @@ if __name__ == "__main__":
                         default="./",
 			required=True,
                         help="Working directory. Mandatory.")
+    parser.add_argument("-p", "--port",
+                        type=int,
+                        help="Port of a running conversion server. If "
+                             "given, the job is sent to the server instead "
+                             "of starting a new JVM.")
 
     args = parser.parse_args()
     print("maf file: ", args.maf_file, "\ndirectory: ", args.directory)
@@ -71,6 +98,10 @@ if __name__ == "__main__":
     	ret.remove('')
     	return ret
 
+    if args.port:
+        print(submit_to_server(args.port, args.maf_file, args.directory))
+        sys.exit(0)
+
     command = ['/home/maf2matrix.jar', args.maf_file, args.directory] # Any number of args to be passed to the jar file
 
     result = jarWrapper(*command)
@@ -0,0 +1,317 @@
+package org.panda.resource;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-running conversion server that keeps the converter warm in a single JVM, so that repeated conversions do not
+ * pay the JVM startup and JIT warm-up each time. Jobs are submitted over a local socket with a line protocol, where
+ * fields are separated by tabs:
+ * <pre>
+ * SUBMIT maf-file out-dir [options]   -> OK id | ERROR message
+ * STATUS id                           -> id state [detail]
+ * WAIT id                             -> same as STATUS, after the job finishes
+ * SHUTDOWN                            -> OK
+ * </pre>
+ * Options are the same as the command line options of {@link PanCanMAFToMatrix}. Waiting jobs are kept in a bounded
+ * queue, and submissions are refused when it is full. Running jobs are limited both by the number of worker threads
+ * and by a memory budget, where each job reserves an estimate proportional to its MAF size. Only the most recent
+ * finished jobs are kept for status queries.
+ */
+public class ConversionServer
+{
+	public static final int DEFAULT_PORT = 9877;
+	public static final int DEFAULT_QUEUE_SIZE = 100;
+
+	/**
+	 * Number of finished jobs to keep for status queries. Older ones are forgotten.
+	 */
+	public static final int MAX_FINISHED_JOBS = 1000;
+
+	/**
+	 * Rough estimate of the heap needed per byte of MAF file during a conversion.
+	 */
+	private static final int MEMORY_PER_MAF_BYTE = 3;
+
+	private static final int MB = 1 << 20;
+
+	enum State {QUEUED, RUNNING, DONE, FAILED}
+
+	private final ServerSocket serverSocket;
+	private final ThreadPoolExecutor executor;
+	private final Semaphore memory;
+	private final int memoryBudgetMB;
+	private final Map<Integer, Job> jobs = new ConcurrentHashMap<>();
+	private final Queue<Integer> finishedIDs = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger lastID = new AtomicInteger();
+
+	/**
+	 * @param port local port to listen
+	 * @param workers maximum number of concurrent jobs
+	 * @param queueSize maximum number of waiting jobs
+	 * @param memoryBudgetMB total memory that running jobs can reserve, in megabytes
+	 */
+	public ConversionServer(int port, int workers, int queueSize, int memoryBudgetMB) throws IOException
+	{
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(queueSize));
+		this.memoryBudgetMB = memoryBudgetMB;
+		this.memory = new Semaphore(memoryBudgetMB, true);
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int memoryMB = args.length > 1 ? Integer.parseInt(args[1]) :
+			(int) (Runtime.getRuntime().maxMemory() * 0.8 / MB);
+
+		ConversionServer server = new ConversionServer(port, Runtime.getRuntime().availableProcessors(),
+			DEFAULT_QUEUE_SIZE, memoryMB);
+
+		System.out.println("Conversion server listening on port " + port + " with memory budget " + memoryMB + " MB");
+		server.run();
+	}
+
+	/**
+	 * Accepts connections until a shutdown command is received.
+	 */
+	public void run() throws IOException
+	{
+		while (!serverSocket.isClosed())
+		{
+			Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException e)
+			{
+				if (serverSocket.isClosed()) break;
+				throw e;
+			}
+
+			Thread thread = new Thread(() -> serve(socket));
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		executor.shutdown();
+	}
+
+	private void serve(Socket socket)
+	{
+		try (Socket s = socket;
+			BufferedReader reader = new BufferedReader(
+				new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter writer = new PrintWriter(
+				new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.trim().isEmpty()) continue;
+
+				String reply;
+				try
+				{
+					reply = process(line.split("\t"));
+				}
+				catch (RuntimeException e)
+				{
+					// The client gets an answer for every command, and the connection stays open
+					reply = "ERROR " + e;
+				}
+				writer.println(reply);
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	private String process(String[] token)
+	{
+		switch (token[0])
+		{
+			case "SUBMIT":
+				return submit(token);
+			case "STATUS":
+			case "WAIT":
+				Job job = token.length < 2 ? null : jobs.get(parseID(token[1]));
+				if (job == null) return "ERROR unknown job";
+				if (token[0].equals("WAIT")) job.awaitFinish();
+				return job.getStatus();
+			case "SHUTDOWN":
+				try
+				{
+					serverSocket.close();
+				}
+				catch (IOException e)
+				{
+					return "ERROR " + e.getMessage();
+				}
+				return "OK";
+			default:
+				return "ERROR unknown command " + token[0];
+		}
+	}
+
+	private String submit(String[] token)
+	{
+		if (token.length < 3) return "ERROR usage: SUBMIT maf-file out-dir [options]";
+		if (token[1].equals(PanCanMAFToMatrix.STD_STREAM) || token[2].equals(PanCanMAFToMatrix.STD_STREAM))
+			return "ERROR standard streams are not available to server jobs";
+
+		File maf = new File(token[1]);
+		if (!maf.isFile()) return "ERROR cannot find " + token[1];
+
+		PanCanMAFToMatrix.Options options;
+		try
+		{
+			options = PanCanMAFToMatrix.Options.parse(token, 3);
+		}
+		catch (IOException e)
+		{
+			return "ERROR " + e.getMessage();
+		}
+		catch (NumberFormatException e)
+		{
+			return "ERROR invalid number: " + e.getMessage();
+		}
+		if (options == null)
+		{
+			return "ERROR invalid options " + Arrays.toString(Arrays.copyOfRange(token, 3, token.length));
+		}
+
+		// A job cannot reserve more than the whole budget, otherwise it would never start
+		int reserveMB = (int) Math.min(memoryBudgetMB, Math.max(1, maf.length() * MEMORY_PER_MAF_BYTE / MB));
+
+		Job job = new Job(lastID.incrementAndGet(), token[1], token[2], options, reserveMB);
+		jobs.put(job.id, job);
+		try
+		{
+			executor.execute(job);
+		}
+		catch (RejectedExecutionException e)
+		{
+			jobs.remove(job.id);
+			return "ERROR job queue is full";
+		}
+		return "OK " + job.id;
+	}
+
+	/**
+	 * Records the finished job, and removes the oldest finished jobs above the limit.
+	 */
+	private void forgetOldJobs(int finishedID)
+	{
+		finishedIDs.add(finishedID);
+		while (finishedIDs.size() > MAX_FINISHED_JOBS)
+		{
+			Integer old = finishedIDs.poll();
+			if (old != null) jobs.remove(old);
+		}
+	}
+
+	private int parseID(String s)
+	{
+		try
+		{
+			return Integer.parseInt(s.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * A single conversion job and its status.
+	 */
+	class Job implements Runnable
+	{
+		final int id;
+		final String maf;
+		final String outDir;
+		final PanCanMAFToMatrix.Options options;
+		final int reserveMB;
+
+		volatile State state = State.QUEUED;
+		volatile String message;
+		volatile long millis;
+
+		private final CountDownLatch finished = new CountDownLatch(1);
+
+		Job(int id, String maf, String outDir, PanCanMAFToMatrix.Options options, int reserveMB)
+		{
+			this.id = id;
+			this.maf = maf;
+			this.outDir = outDir;
+			this.options = options;
+			this.reserveMB = reserveMB;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				memory.acquireUninterruptibly(reserveMB);
+				try
+				{
+					state = State.RUNNING;
+					long start = System.currentTimeMillis();
+					PanCanMAFToMatrix.convertToMatrix(maf, outDir, options);
+					millis = System.currentTimeMillis() - start;
+					state = State.DONE;
+				}
+				finally
+				{
+					memory.release(reserveMB);
+				}
+			}
+			catch (Exception | OutOfMemoryError e)
+			{
+				message = e.toString();
+				state = State.FAILED;
+			}
+			finally
+			{
+				finished.countDown();
+				forgetOldJobs(id);
+			}
+		}
+
+		void awaitFinish()
+		{
+			try
+			{
+				finished.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		String getStatus()
+		{
+			switch (state)
+			{
+				case DONE: return id + " " + state + " " + millis + " ms";
+				case FAILED: return id + " " + state + " " + message;
+				default: return id + " " + state;
+			}
+		}
+	}
+}
@@ -1,14 +1,14 @@
 package org.panda.resource;
 
-import org.panda.resource.tcga.MutTuple;
+import org.panda.resource.tcga.CoverageMask;
 import org.panda.resource.tcga.MutationReader;
+import org.panda.resource.tcga.RegionIndex;
 // import org.panda.utility.ArrayUtil;
-//import org.panda.utility.StringUtil;
 // import org.panda.utility.statistics.FDR;
-// import org.panda.resource.tcga.AlterationMatrixSeparator;
+import org.panda.resource.tcga.AlterationMatrixSeparator;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -21,13 +21,82 @@ import java.util.stream.Collectors;
  */
 public class PanCanMAFToMatrix
 {
+	/**
+	 * Mutation types that are counted as alterations in the matrix.
+	 */
+	public static final String[] MUT_TYPES = new String[]{"Missense_Mutation", "Frame_Shift_Ins", "Frame_Shift_Del",
+		"Nonsense_Mutation", "Splice_Site", "In_Frame_Del", "In_Frame_Ins", "Translation_Start_Site"};
+
+	/**
+	 * Used in place of the MAF file or the output directory to read from the standard input or write to the standard
+	 * output.
+	 */
+	public static final String STD_STREAM = "-";
+
+	/**
+	 * Buffer size for the standard streams, large enough to keep pipe reads and writes infrequent.
+	 */
+	private static final int STREAM_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Default number of mutations at a residue of a gene for the residue to be a hotspot.
+	 */
+	public static final int DEFAULT_HOTSPOT_RECURRENCE = 3;
+
+	/**
+	 * Max-VAF matrix value of a mutation with unknown frequency. It is not {@link CoverageMask#NA}, which is a gene that
+	 * is not assayed, so that the mutation is still counted as an alteration when the matrix is read back.
+	 */
+	public static final String UNKNOWN_VAF = "NaN";
+
+	public static final String USAGE = "usage: PanCanMAFToMatrix maf-file out-dir [options]\n" +
+		"       PanCanMAFToMatrix -server [port [memory-budget-mb]]\n" +
+		"  Use - as maf-file to read from the standard input, and as out-dir to write to the standard output.\n" +
+		"  -genes <file|cancer-genes>  keep only the genes listed in the file (one per line), or the Bushman cancer genes\n" +
+		"  -samples <file>             keep only the samples listed in the file (one per line)\n" +
+		"  -normalize-symbols          convert gene symbols to approved HGNC symbols, merging aliases\n" +
+		"  -barcode-level <level>      collapse sample barcodes to patient, sample, or vial level\n" +
+		"  -off-heap                   keep mutation records outside the Java heap, for very large cohorts\n" +
+		"  -values <presence|count|max-vaf|hotspot|truncating|hotspot-or-truncating>\n" +
+		"                              cell values of the matrix, default is presence\n" +
+		"  -hotspot-min <count>        mutations at a residue for it to be a hotspot, default is " +
+		DEFAULT_HOTSPOT_RECURRENCE + "\n" +
+		"  -regions <bed-file>         write a region by sample matrix of the BED regions, using the genomic positions\n" +
+		"  -coverage <sample-panel-file> <panel-genes-file>\n" +
+		"                              write NA for the genes that are not in the panel of a sample, samples without a\n" +
+		"                              panel are whole exome\n" +
+		"  -collapse-duplicates        count the repeated calls of a variant in a sample from multiple callers once\n" +
+		"  -min-vaf <frequency>        drop mutations with a lower variant allele frequency (t_alt_count / t_depth)\n" +
+		"  -min-depth <reads>          drop mutations with a lower read depth (t_depth)\n" +
+		"  -exclude-hypermutators      leave out samples with mutated gene count above Q3 + 1.5 * IQR";
+
 	public static void main(String[] args) throws IOException
 	{
-		if (args.length != 2) {
-			System.err.println("usage: PanCanMAFToMatrix maf-file out-dir");
+		if (args.length > 0 && args[0].equals("-server"))
+		{
+			ConversionServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		Options options;
+		try
+		{
+			options = args.length < 2 ? null : Options.parse(args, 2);
+		}
+		catch (NumberFormatException e)
+		{
+			System.err.println("Invalid number: " + e.getMessage());
+			options = null;
+		}
+		if (options == null) {
+			System.err.println(USAGE);
 			System.exit(1);
 		}
-		convertToMatrix(args[0], args[1]);
+
+		// Progress messages must not mix with the matrix when it goes to the standard output
+		if (args[1].equals(STD_STREAM)) System.setOut(System.err);
+
+		convertToMatrix(args[0], args[1], options);
 //		convertToMatrixWithSelectMutations();
 //		separateToChunks();
 	}
@@ -52,72 +121,448 @@ public class PanCanMAFToMatrix
 //	}
 
 	public static void convertToMatrix(String pancanMAF, String outDir) throws IOException
+	{
+		convertToMatrix(pancanMAF, outDir, new Options());
+	}
+
+	public static void convertToMatrix(String pancanMAF, String outDir, Options options) throws IOException
 	{
 		System.out.println("maf file: ");
 		System.out.println(pancanMAF);
 
-		MutationReader mr = new MutationReader(pancanMAF, "Missense_Mutation", "Frame_Shift_Ins", "Frame_Shift_Del",
-			"Nonsense_Mutation", "Splice_Site", "In_Frame_Del", "In_Frame_Ins", "Translation_Start_Site");
+		MutationReader mr = new MutationReader(null);
+		options.configure(mr);
+		Set<String> mutTypes = new HashSet<>(Arrays.asList(MUT_TYPES));
 
-		System.out.println("Getting samples");
+		if (pancanMAF.equals(STD_STREAM))
+		{
+			mr.load(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE),
+				mutTypes);
+		}
+		else mr.load(pancanMAF, mutTypes);
 
 		String[] samples = mr.getSamples().stream().sorted().collect(Collectors.toList()).toArray(new String[0]);
 
+		if (options.excludeHypermutators)
+		{
+			int total = samples.length;
+			samples = selectNonOutliers(mr, samples);
+			System.out.println("Excluded " + (total - samples.length) + " hypermutated samples out of " + total);
+		}
 
 		System.out.println("Writing to output file");
-		BufferedWriter writer = Files.newBufferedWriter(Paths.get(outDir + "/" + pancanMAF.substring(0, pancanMAF.length()-4) + "_Matrix.txt"));
+
+		if (outDir.equals(STD_STREAM))
+		{
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+			writeMatrix(mr, samples, writer, options);
+			writer.close();
+			System.out.println("Matrix written to the standard output.");
+		}
+		else
+		{
+			String mafName = new File(pancanMAF).getName();
+			String outFile = pancanMAF.equals(STD_STREAM) ? "DataMatrix.txt" :
+				mafName.substring(0, mafName.length()-4) + "_Matrix.txt";
+
+			BufferedWriter writer = Files.newBufferedWriter(Paths.get(outDir + "/" + outFile));
+			writeMatrix(mr, samples, writer, options);
+			writer.close();
+			System.out.println(outFile + " written.");
+		}
+	}
+
+	private static void writeMatrix(MutationReader mr, String[] samples, Writer writer, Options options)
+		throws IOException
+	{
+		if (options.regions != null) writeRegionMatrix(mr, samples, writer, RegionIndex.readBED(options.regions));
+		else writeMatrix(mr, samples, writer, options.values, options.hotspotMinRecurrence);
+	}
+
+	/**
+	 * Writes a binary matrix of the given regions and samples, where a region is altered in a sample if a mutation of
+	 * the sample overlaps the region. The reader has to read the genomic positions.
+	 */
+	public static void writeRegionMatrix(MutationReader mr, String[] samples, Writer writer, RegionIndex regions)
+		throws IOException
+	{
+		boolean[][] alt = mr.getRegionAlterationMatrix(regions, samples);
+
 		for (String sample : samples)
 		{
 			writer.write("\t" + sample);
 		}
+		for (int r = 0; r < alt.length; r++)
+		{
+			writer.write("\n" + regions.getName(r));
+			for (boolean a : alt[r])
+			{
+				writer.write("\t" + (a ? "1" : "0"));
+			}
+		}
+	}
+
+	/**
+	 * Writes the loaded mutations of the reader as a binary alteration matrix, with samples sorted.
+	 */
+	public static void writeMatrix(MutationReader mr, Writer writer) throws IOException
+	{
+		String[] samples = mr.getSamples().stream().sorted().collect(Collectors.toList()).toArray(new String[0]);
+		writeMatrix(mr, samples, writer, MatrixValue.PRESENCE);
+	}
+
+	/**
+	 * Writes the loaded mutations of the reader as a matrix of the given value, for the given samples.
+	 */
+	public static void writeMatrix(MutationReader mr, String[] samples, Writer writer, MatrixValue value)
+		throws IOException
+	{
+		writeMatrix(mr, samples, writer, value, DEFAULT_HOTSPOT_RECURRENCE);
+	}
+
+	/**
+	 * Writes the loaded mutations of the reader as a matrix of the given value, for the given samples.
+	 * @param hotspotMinRecurrence number of mutations at a residue of a gene for the residue to be a hotspot
+	 */
+	public static void writeMatrix(MutationReader mr, String[] samples, Writer writer, MatrixValue value,
+		int hotspotMinRecurrence) throws IOException
+	{
+		for (String sample : samples)
+		{
+			writer.write("\t" + sample);
+		}
+		// Hotspots are found once from the whole loaded data, before the single pass over the genes
+		Map<String, int[]> hotspots = value == MatrixValue.HOTSPOT || value == MatrixValue.HOTSPOT_OR_TRUNCATING ?
+			mr.getHotspotPositions(hotspotMinRecurrence) : null;
+		boolean truncating = value == MatrixValue.TRUNCATING || value == MatrixValue.HOTSPOT_OR_TRUNCATING;
+
+		for (String gene : mr.getGenes())
+		{
+			// Unmutated cells of the samples where the gene is not assayed are NA, null if all are assayed
+			long[] cov = mr.getGeneCoverage(gene, samples);
+
+			switch (value)
+			{
+				case PRESENCE:
+					boolean[] mut = mr.getGeneAlterationArray(gene, samples);
+					if (mut != null)
+					{
+						writer.write("\n" + gene);
+						for (int i = 0; i < mut.length; i++)
+						{
+							writer.write("\t" + (mut[i] ? "1" : isNA(cov, i) ? CoverageMask.NA : "0"));
+						}
+					}
+					break;
+				case COUNT:
+					short[] cnt = mr.getGeneMutationCountArray(gene, samples);
+					if (cnt != null)
+					{
+						writer.write("\n" + gene);
+						for (int i = 0; i < cnt.length; i++)
+						{
+							writer.write("\t" + (cnt[i] == 0 && isNA(cov, i) ? CoverageMask.NA : cnt[i]));
+						}
+					}
+					break;
+				case MAX_VAF:
+					float[] vaf = mr.getGeneMaxVAFArray(gene, samples);
+					if (vaf != null)
+					{
+						// A frequency of 0 can also be a mutation with no alternative reads
+						boolean[] mutated = mr.getGeneAlterationArray(gene, samples);
+						writer.write("\n" + gene);
+						for (int i = 0; i < vaf.length; i++)
+						{
+							writer.write("\t" + (mutated[i] ? formatVAF(vaf[i]) : isNA(cov, i) ? CoverageMask.NA : "0"));
+						}
+					}
+					break;
+				default:
+					boolean[] alt = mr.getGeneAlterationArray(gene, samples,
+						hotspots == null ? null : hotspots.get(gene), truncating);
+					if (alt != null)
+					{
+						writer.write("\n" + gene);
+						for (int i = 0; i < alt.length; i++)
+						{
+							writer.write("\t" + (alt[i] ? "1" : isNA(cov, i) ? CoverageMask.NA : "0"));
+						}
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * @return whether the sample is not assayed in the given coverage, where null coverage is all assayed
+	 */
+	private static boolean isNA(long[] cov, int sample)
+	{
+		return cov != null && !CoverageMask.isSet(cov, sample);
+	}
+
+	/**
+	 * Removes the hypermutated samples, using the mutated gene counts of the samples in the loaded data. This applies
+	 * the same rule with {@link AlterationMatrixSeparator#separateNonOutliers(String, String)}, without writing and
+	 * re-reading the matrix.
+	 * @return samples that are not outliers, in the given order
+	 */
+	public static String[] selectNonOutliers(MutationReader mr, String[] samples)
+	{
+		if (samples.length == 0) return samples;
+
+		int[] cnt = new int[samples.length];
 		for (String gene : mr.getGenes())
 		{
 			boolean[] mut = mr.getGeneAlterationArray(gene, samples);
-			if (mut != null)
+			if (mut == null) continue;
+			for (int i = 0; i < mut.length; i++)
+			{
+				if (mut[i]) cnt[i]++;
+			}
+		}
+
+		List<Integer> counts = new ArrayList<>(cnt.length);
+		for (int c : cnt) counts.add(c);
+		double thr = AlterationMatrixSeparator.getOutlierThreshold(counts);
+
+		List<String> keep = new ArrayList<>();
+		for (int i = 0; i < samples.length; i++)
+		{
+			if (cnt[i] <= thr) keep.add(samples[i]);
+		}
+		return keep.toArray(new String[0]);
+	}
+
+	/**
+	 * Formats the frequency of a mutated cell in fixed-point with up to four decimals. It is never "0", which is a cell
+	 * without mutation.
+	 */
+	private static String formatVAF(float v)
+	{
+		if (Float.isNaN(v)) return UNKNOWN_VAF;
+
+		// Digits are written from the rounded integer, since Double.toString switches to scientific notation below 0.001
+		long r = Math.round(v * 10000);
+		String decimals = Long.toString(10000 + r % 10000).substring(1);
+		int end = decimals.length();
+		while (end > 1 && decimals.charAt(end - 1) == '0') end--;
+		return (r / 10000) + "." + decimals.substring(0, end);
+	}
+
+	/**
+	 * Cell values of the written matrix.
+	 */
+	public enum MatrixValue
+	{
+		/**
+		 * 1 if the gene is mutated in the sample, 0 otherwise.
+		 */
+		PRESENCE,
+
+		/**
+		 * Number of mutations of the gene in the sample.
+		 */
+		COUNT,
+
+		/**
+		 * Highest variant allele frequency of the gene's mutations in the sample, 0 if not mutated, NaN if mutated
+		 * with unknown frequency.
+		 */
+		MAX_VAF,
+
+		/**
+		 * 1 if the gene has a mutation at a hotspot residue in the sample, 0 otherwise.
+		 */
+		HOTSPOT,
+
+		/**
+		 * 1 if the gene has a deleterious (truncating) mutation in the sample, 0 otherwise.
+		 */
+		TRUNCATING,
+
+		/**
+		 * 1 if the gene has a hotspot or a deleterious mutation in the sample, 0 otherwise.
+		 */
+		HOTSPOT_OR_TRUNCATING
+	}
+
+	/**
+	 * Options of the conversion. Options that are not set keep the default behavior, which is to convert everything
+	 * in the MAF.
+	 */
+	public static class Options
+	{
+		/**
+		 * Gene panel. Rows of other genes are dropped while the MAF is parsed.
+		 */
+		public Set<String> genes;
+
+		/**
+		 * Sample list. Rows of other samples are dropped while the MAF is parsed.
+		 */
+		public Set<String> samples;
+
+		/**
+		 * Whether to convert gene symbols to the approved HGNC symbols while parsing.
+		 */
+		public boolean normalizeSymbols;
+
+		/**
+		 * Length to truncate the sample barcodes, zero for no truncation.
+		 */
+		public int barcodeLength;
+
+		/**
+		 * Whether to keep the mutation records off-heap while converting.
+		 */
+		public boolean offHeap;
+
+		/**
+		 * Cell values of the written matrix.
+		 */
+		public MatrixValue values = MatrixValue.PRESENCE;
+
+		/**
+		 * Number of mutations at a residue of a gene for the residue to be a hotspot, used by the hotspot values.
+		 */
+		public int hotspotMinRecurrence = DEFAULT_HOTSPOT_RECURRENCE;
+
+		/**
+		 * BED file of the regions for a region level matrix, null for a gene level matrix.
+		 */
+		public String regions;
+
+		/**
+		 * Genes assayed in each sample, null if all genes are assayed in all samples.
+		 */
+		public CoverageMask coverage;
+
+		/**
+		 * Read count thresholds applied while parsing, zero for no threshold.
+		 */
+		public float minVAF;
+		public int minDepth;
+
+		/**
+		 * Whether to collapse the repeated calls of the same variant in the same sample into one mutation.
+		 */
+		public boolean collapseDuplicateCalls;
+
+		/**
+		 * Whether to leave the hypermutated samples out of the written matrix.
+		 */
+		public boolean excludeHypermutators;
+
+		/**
+		 * Parses the option flags in the given arguments, starting from the given index.
+		 * @return parsed options, or null if the arguments are not valid
+		 * @throws NumberFormatException if the value of a numeric option is not a number
+		 */
+		public static Options parse(String[] args, int from) throws IOException
+		{
+			Options options = new Options();
+			for (int i = from; i < args.length; i++)
 			{
-				writer.write("\n" + gene);
-				for (boolean m : mut)
+				switch (args[i])
 				{
-					writer.write("\t" + (m ? "1" : "0"));
+					case "-genes":
+						if (++i == args.length) return null;
+						options.genes = args[i].equals("cancer-genes") ?
+							new HashSet<>(CancerGeneBushman.get().getAllSymbols()) : readList(args[i]);
+						break;
+					case "-samples":
+						if (++i == args.length) return null;
+						options.samples = readList(args[i]);
+						break;
+					case "-normalize-symbols":
+						options.normalizeSymbols = true;
+						break;
+					case "-off-heap":
+						options.offHeap = true;
+						break;
+					case "-values":
+						if (++i == args.length) return null;
+						try
+						{
+							options.values = MatrixValue.valueOf(args[i].toUpperCase().replace('-', '_'));
+						}
+						catch (IllegalArgumentException e)
+						{
+							System.err.println("Unknown matrix value: " + args[i]);
+							return null;
+						}
+						break;
+					case "-hotspot-min":
+						if (++i == args.length) return null;
+						options.hotspotMinRecurrence = Integer.parseInt(args[i]);
+						break;
+					case "-regions":
+						if (++i == args.length) return null;
+						options.regions = args[i];
+						break;
+					case "-coverage":
+						if (i + 2 >= args.length) return null;
+						options.coverage = CoverageMask.read(args[i + 1], args[i + 2]);
+						i += 2;
+						break;
+					case "-min-vaf":
+						if (++i == args.length) return null;
+						options.minVAF = Float.parseFloat(args[i]);
+						break;
+					case "-min-depth":
+						if (++i == args.length) return null;
+						options.minDepth = Integer.parseInt(args[i]);
+						break;
+					case "-collapse-duplicates":
+						options.collapseDuplicateCalls = true;
+						break;
+					case "-exclude-hypermutators":
+						options.excludeHypermutators = true;
+						break;
+					case "-barcode-level":
+						if (++i == args.length) return null;
+						switch (args[i])
+						{
+							case "patient": options.barcodeLength = MutationReader.PATIENT_BARCODE_LENGTH; break;
+							case "sample": options.barcodeLength = MutationReader.SAMPLE_BARCODE_LENGTH; break;
+							case "vial": options.barcodeLength = MutationReader.VIAL_BARCODE_LENGTH; break;
+							default:
+								System.err.println("Unknown barcode level: " + args[i]);
+								return null;
+						}
+						break;
+					default:
+						System.err.println("Unknown option: " + args[i]);
+						return null;
 				}
 			}
+			return options;
 		}
 
-		System.out.println(pancanMAF.substring(0, pancanMAF.length()-4) + "_Matrix.txt written.");
-		writer.close();
-	}
+		/**
+		 * Applies the parse-time options to the given reader. Has to be called before the reader loads.
+		 */
+		public void configure(MutationReader mr)
+		{
+			mr.setGeneWhitelist(genes);
+			mr.setSampleWhitelist(samples);
+			mr.setNormalizeSymbols(normalizeSymbols);
+			mr.setBarcodeLength(barcodeLength);
+			mr.setOffHeap(offHeap);
+			mr.setMinVAF(minVAF);
+			mr.setMinDepth(minDepth);
+			mr.setReadGenomicPositions(regions != null);
+			mr.setCollapseDuplicateCalls(collapseDuplicateCalls);
+			mr.setCoverageMask(coverage);
+		}
 
-//	private static boolean[] getAlterations(List<MutTuple>[] muts, Set<Integer> hotLocs, boolean isTrunBiased)
-//	{
-//		boolean[] b = new boolean[muts.length];
-//
-//		for (int i = 0; i < b.length; i++)
-//		{
-//			boolean m = false;
-//			if (muts[i] != null) // we don't handle no-data cases
-//			{
-//				for (MutTuple mut : muts[i])
-//				{
-//					if (mut.isDeleterious() && isTrunBiased)
-//					{
-//						m = true;
-//						break;
-//					}
-//
-//					if (hotLocs != null)
-//					{
-//						int loc = StringUtil.findFirstInt(mut.value);
-//						if (hotLocs.contains(loc))
-//						{
-//							m = true;
-//							break;
-//						}
-//					}
-//				}
-//			}
-//			b[i] = m;
-//		}
-//		return b;
-//	}
-//
+		private static Set<String> readList(String file) throws IOException
+		{
+			return Files.lines(Paths.get(file)).map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#"))
+				.collect(Collectors.toSet());
+		}
+	}
 }
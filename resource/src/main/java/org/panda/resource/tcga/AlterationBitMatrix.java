@@ -0,0 +1,307 @@
+package org.panda.resource.tcga;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * A binary alteration matrix where each gene row is a bitset over the samples. A cell is altered if its value in the
+ * text matrix is not "0" or "NA". Used for permutation and pairwise overlap computations, where the rows are processed
+ * a word of 64 samples at a time.
+ *
+ * The value of each altered cell, such as a copy number code, is kept aside and moves with the alteration, and the
+ * "NA" cells are kept as not assayed, so that the matrix is written back with the same values.
+ */
+public class AlterationBitMatrix
+{
+	/**
+	 * Value of an altered cell with no other value.
+	 */
+	private static final String ALTERED = "1";
+
+	private final String[] genes;
+	private final String[] samples;
+	private final long[][] rows;
+
+	/**
+	 * Bitsets of the samples where each gene is assayed. Null when all cells are assayed, and a row is null when its
+	 * gene is assayed in all samples.
+	 */
+	private long[][] assayed;
+
+	/**
+	 * Distinct values of the altered cells, and the index of the value of each altered cell in it. Index 0 is
+	 * {@link #ALTERED}. Null when all altered cells have that value, and a row is null when all cells of its gene have
+	 * it.
+	 */
+	private List<String> values;
+	private byte[][] codes;
+
+	/**
+	 * Creates an empty (unaltered) matrix.
+	 */
+	public AlterationBitMatrix(String[] genes, String[] samples)
+	{
+		this.genes = genes;
+		this.samples = samples;
+		this.rows = new long[genes.length][getWordCount(samples.length)];
+	}
+
+	public AlterationBitMatrix(AlterationMatrix matrix)
+	{
+		this(matrix.getGenes().toArray(new String[0]), matrix.getSamples());
+
+		for (int g = 0; g < genes.length; g++)
+		{
+			for (int s = 0; s < samples.length; s++)
+			{
+				String value = matrix.getValue(g, s);
+				if (value.equals(CoverageMask.NA)) setNotAssayed(g, s);
+				else if (!value.equals("0"))
+				{
+					set(g, s);
+					if (!value.equals(ALTERED)) setCode(g, s, getValueCode(value));
+				}
+			}
+		}
+	}
+
+	public static AlterationBitMatrix read(String file) throws IOException
+	{
+		return new AlterationBitMatrix(AlterationMatrix.read(file));
+	}
+
+	/**
+	 * @return number of long words that hold the given number of bits
+	 */
+	public static int getWordCount(int bits)
+	{
+		return (bits + 63) >>> 6;
+	}
+
+	public String[] getGenes()
+	{
+		return genes;
+	}
+
+	public String[] getSamples()
+	{
+		return samples;
+	}
+
+	/**
+	 * @return the bitset of the gene row, which is not copied
+	 */
+	public long[] getRow(int gene)
+	{
+		return rows[gene];
+	}
+
+	public boolean get(int gene, int sample)
+	{
+		return (rows[gene][sample >>> 6] & (1L << sample)) != 0;
+	}
+
+	public void set(int gene, int sample)
+	{
+		rows[gene][sample >>> 6] |= 1L << sample;
+	}
+
+	/**
+	 * Clears the alteration, together with its value.
+	 */
+	public void clear(int gene, int sample)
+	{
+		rows[gene][sample >>> 6] &= ~(1L << sample);
+		setCode(gene, sample, 0);
+	}
+
+	/**
+	 * @return whether the gene is assayed in the sample, which is false for the "NA" cells
+	 */
+	public boolean isAssayed(int gene, int sample)
+	{
+		return assayed == null || assayed[gene] == null || (assayed[gene][sample >>> 6] & (1L << sample)) != 0;
+	}
+
+	/**
+	 * @return the bitset of the samples where the gene is assayed, which is not copied, or null if the gene is assayed
+	 * in all samples
+	 */
+	public long[] getAssayed(int gene)
+	{
+		return assayed == null ? null : assayed[gene];
+	}
+
+	/**
+	 * Marks the cell as not assayed, which also clears its alteration.
+	 */
+	public void setNotAssayed(int gene, int sample)
+	{
+		clear(gene, sample);
+
+		if (assayed == null) assayed = new long[genes.length][];
+		if (assayed[gene] == null)
+		{
+			assayed[gene] = new long[rows[gene].length];
+			Arrays.fill(assayed[gene], -1L);
+			if ((samples.length & 63) != 0) assayed[gene][assayed[gene].length - 1] = (1L << samples.length) - 1;
+		}
+		assayed[gene][sample >>> 6] &= ~(1L << sample);
+	}
+
+	/**
+	 * @return the value code of the cell, where 0 is {@link #ALTERED}
+	 */
+	int getCode(int gene, int sample)
+	{
+		return codes == null || codes[gene] == null ? 0 : codes[gene][sample] & 0xFF;
+	}
+
+	/**
+	 * Sets the value code of an altered cell, which moves its value to another cell together with its alteration.
+	 */
+	void setCode(int gene, int sample, int code)
+	{
+		if (code == 0 && (codes == null || codes[gene] == null)) return;
+
+		if (codes == null) codes = new byte[genes.length][];
+		if (codes[gene] == null) codes[gene] = new byte[samples.length];
+		codes[gene][sample] = (byte) code;
+	}
+
+	private int getValueCode(String value)
+	{
+		if (values == null) values = new ArrayList<>(Collections.singletonList(ALTERED));
+
+		int code = values.indexOf(value);
+		if (code < 0)
+		{
+			if (values.size() > 0xFF) throw new IllegalArgumentException("Too many distinct cell values: " + value);
+			code = values.size();
+			values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * @return the value of the cell in the text matrix
+	 */
+	public String getValue(int gene, int sample)
+	{
+		if (get(gene, sample)) return values == null ? ALTERED : values.get(getCode(gene, sample));
+		return isAssayed(gene, sample) ? "0" : CoverageMask.NA;
+	}
+
+	/**
+	 * @return number of altered cells
+	 */
+	public int getAlterationCount()
+	{
+		int cnt = 0;
+		for (int g = 0; g < genes.length; g++)
+		{
+			cnt += getGeneAlterationCount(g);
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return number of altered samples of the gene
+	 */
+	public int getGeneAlterationCount(int gene)
+	{
+		int cnt = 0;
+		for (long w : rows[gene])
+		{
+			cnt += Long.bitCount(w);
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return number of altered genes of each sample
+	 */
+	public int[] getSampleAlterationCounts()
+	{
+		int[] cnt = new int[samples.length];
+		for (long[] row : rows)
+		{
+			for (int i = 0; i < row.length; i++)
+			{
+				long w = row[i];
+				while (w != 0)
+				{
+					cnt[(i << 6) + Long.numberOfTrailingZeros(w)]++;
+					w &= w - 1;
+				}
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * @return a copy of this matrix that shares the gene and sample names, and the cell value dictionary
+	 */
+	public AlterationBitMatrix copy()
+	{
+		AlterationBitMatrix m = new AlterationBitMatrix(genes, samples);
+		for (int g = 0; g < genes.length; g++)
+		{
+			System.arraycopy(rows[g], 0, m.rows[g], 0, rows[g].length);
+		}
+		m.assayed = copy(assayed);
+		m.values = values;
+		if (codes != null)
+		{
+			m.codes = new byte[codes.length][];
+			for (int g = 0; g < codes.length; g++)
+			{
+				if (codes[g] != null) m.codes[g] = codes[g].clone();
+			}
+		}
+		return m;
+	}
+
+	private static long[][] copy(long[][] bits)
+	{
+		if (bits == null) return null;
+		long[][] c = new long[bits.length][];
+		for (int i = 0; i < bits.length; i++)
+		{
+			if (bits[i] != null) c[i] = bits[i].clone();
+		}
+		return c;
+	}
+
+	/**
+	 * Writes the matrix in the DataMatrix.txt format of {@link org.panda.resource.PanCanMAFToMatrix}, with the value of
+	 * each altered cell, 0 for unaltered cells, and NA for the cells that are not assayed.
+	 */
+	public void write(String outFile) throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8))
+		{
+			for (String sample : samples)
+			{
+				writer.write("\t");
+				writer.write(sample);
+			}
+
+			StringBuilder line = new StringBuilder();
+			for (int g = 0; g < genes.length; g++)
+			{
+				line.setLength(0);
+				line.append("\n").append(genes[g]);
+				for (int s = 0; s < samples.length; s++)
+				{
+					line.append('\t').append(getValue(g, s));
+				}
+				writer.write(line.toString());
+			}
+		}
+	}
+}
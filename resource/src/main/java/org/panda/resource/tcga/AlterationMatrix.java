@@ -0,0 +1,266 @@
+package org.panda.resource.tcga;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * An alteration matrix (DataMatrix.txt) loaded in memory, so that several operations on the same cohort parse the text
+ * only once. Each row is packed as one byte per cell, where the byte is a code in the dictionary of distinct cell
+ * values. Cell values are kept as text, hence a written matrix is the same with the one read.
+ */
+public class AlterationMatrix
+{
+	/**
+	 * Maximum number of distinct cell values that can be packed in a byte.
+	 */
+	private static final int MAX_VALUES = 256;
+
+	private final String file;
+	private final String corner;
+	private final String[] samples;
+	private final Map<String, Integer> sampleIndex = new HashMap<>();
+	private final List<String> genes = new ArrayList<>();
+	private final Map<String, Integer> geneIndex = new HashMap<>();
+	private final List<byte[]> rows = new ArrayList<>();
+
+	/**
+	 * Number of cells of each row up to the last non-empty one, which are the cells that the file based operations
+	 * split and write. Missing cells of short rows are packed as "0".
+	 */
+	private int[] cellCounts = new int[1024];
+
+	/**
+	 * Dictionary of distinct cell values. Single ASCII character values, which are the usual case, are also looked up
+	 * with the character to avoid creating a String for each cell.
+	 */
+	private final List<String> values = new ArrayList<>();
+	private final Map<String, Integer> valueCodes = new HashMap<>();
+	private final int[] charCodes = new int[128];
+
+	private AlterationMatrix(String file, String header)
+	{
+		this.file = file;
+		String[] token = header.split("\t");
+		this.corner = token[0];
+		this.samples = Arrays.copyOfRange(token, 1, token.length);
+		for (int i = 0; i < samples.length; i++)
+		{
+			sampleIndex.put(samples[i], i);
+		}
+		Arrays.fill(charCodes, -1);
+	}
+
+	/**
+	 * Reads the given matrix file.
+	 */
+	public static AlterationMatrix read(String file) throws IOException
+	{
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8))
+		{
+			String line = reader.readLine();
+			if (line == null) throw new IOException("Empty matrix file: " + file);
+
+			AlterationMatrix matrix = new AlterationMatrix(file, line);
+
+			while ((line = reader.readLine()) != null)
+			{
+				if (!line.isEmpty()) matrix.addRow(line);
+			}
+			return matrix;
+		}
+	}
+
+	private void addRow(String line)
+	{
+		byte[] row = new byte[samples.length];
+		int start = line.indexOf('\t');
+		String gene = start < 0 ? line : line.substring(0, start);
+
+		int i = 0;
+		int cells = 0;
+		while (i < samples.length && start >= 0)
+		{
+			int end = line.indexOf('\t', start + 1);
+			if (end < 0) end = line.length();
+			row[i++] = (byte) getCode(line, start + 1, end);
+			if (end > start + 1) cells = i;
+			start = end < line.length() ? end : -1;
+		}
+
+		// Missing cells of a short row are not altered
+		if (i < samples.length) Arrays.fill(row, i, row.length, (byte) getCode("0", 0, 1));
+
+		int g = genes.size();
+		if (g == cellCounts.length) cellCounts = Arrays.copyOf(cellCounts, g * 2);
+		cellCounts[g] = cells;
+
+		// The first row of a repeated gene is the one that is selected, as in the file based operations
+		geneIndex.putIfAbsent(gene, g);
+		genes.add(gene);
+		rows.add(row);
+	}
+
+	private int getCode(String line, int start, int end)
+	{
+		if (end - start == 1 && line.charAt(start) < 128)
+		{
+			int code = charCodes[line.charAt(start)];
+			if (code >= 0) return code;
+		}
+
+		String value = line.substring(start, end);
+		Integer code = valueCodes.get(value);
+		if (code == null)
+		{
+			if (values.size() == MAX_VALUES)
+				throw new IllegalArgumentException("Matrix has more than " + MAX_VALUES + " distinct values: " + file);
+
+			code = values.size();
+			values.add(value);
+			valueCodes.put(value, code);
+			if (value.length() == 1 && value.charAt(0) < 128) charCodes[value.charAt(0)] = code;
+		}
+		return code;
+	}
+
+	/**
+	 * @return the file that this matrix is read from
+	 */
+	public String getFile()
+	{
+		return file;
+	}
+
+	public String[] getSamples()
+	{
+		return samples;
+	}
+
+	public List<String> getGenes()
+	{
+		return Collections.unmodifiableList(genes);
+	}
+
+	/**
+	 * @return index of the gene row, or -1 if the gene is not in the matrix
+	 */
+	public int getGeneIndex(String gene)
+	{
+		Integer i = geneIndex.get(gene);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @return index of the sample column, or -1 if the sample is not in the matrix
+	 */
+	public int getSampleIndex(String sample)
+	{
+		Integer i = sampleIndex.get(sample);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @return the cell value as it appears in the file
+	 */
+	public String getValue(int gene, int sample)
+	{
+		return values.get(rows.get(gene)[sample] & 0xFF);
+	}
+
+	/**
+	 * Counts the cells that are not "0" or "NA" for each sample, the same way with
+	 * {@link AlterationMatrixSeparator#readSampleAlterationCounts(String)}.
+	 */
+	public Map<String, Integer> getSampleAlterationCounts()
+	{
+		boolean[] altered = new boolean[values.size()];
+		for (int i = 0; i < altered.length; i++)
+		{
+			altered[i] = !values.get(i).equals("0") && !values.get(i).equals(CoverageMask.NA);
+		}
+
+		int[] cnt = new int[samples.length];
+		for (int g = 0; g < rows.size(); g++)
+		{
+			byte[] row = rows.get(g);
+			for (int i = 0; i < cellCounts[g]; i++)
+			{
+				if (altered[row[i] & 0xFF]) cnt[i]++;
+			}
+		}
+
+		Map<String, Integer> map = new HashMap<>();
+		for (int i = 0; i < samples.length; i++)
+		{
+			map.put(samples[i], cnt[i]);
+		}
+		return map;
+	}
+
+	/**
+	 * Selects the samples where the alteration value of the given gene satisfies the selector. Samples where the gene is
+	 * not assayed are not selected.
+	 */
+	public Set<String> selectSamples(String gene, AlterationMatrixSeparator.AlterationSelector selector)
+	{
+		int g = getGeneIndex(gene);
+		if (g < 0) throw new RuntimeException("Cannot find the gene: " + gene);
+
+		byte[] row = rows.get(g);
+		Set<String> selected = new HashSet<>();
+		for (int i = 0; i < samples.length; i++)
+		{
+			String value = values.get(row[i] & 0xFF);
+			if (!value.equals(CoverageMask.NA) && selector.select(Integer.parseInt(value))) selected.add(samples[i]);
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the column indices of the given samples, in the column order of the matrix
+	 */
+	public int[] getColumns(Set<String> subset)
+	{
+		int[] cols = new int[samples.length];
+		int n = 0;
+		for (int i = 0; i < samples.length; i++)
+		{
+			if (subset.contains(samples[i])) cols[n++] = i;
+		}
+		return Arrays.copyOf(cols, n);
+	}
+
+	/**
+	 * Writes the given columns of the matrix, with all the rows. Short rows are written short, as they are by the
+	 * file based operations.
+	 * @param cols column indices in increasing order
+	 */
+	public void write(String outFile, int[] cols) throws IOException
+	{
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8))
+		{
+			writer.write(corner);
+			for (int c : cols)
+			{
+				writer.write("\t");
+				writer.write(samples[c]);
+			}
+
+			for (int g = 0; g < genes.size(); g++)
+			{
+				byte[] row = rows.get(g);
+				writer.write("\n");
+				writer.write(genes.get(g));
+				for (int c : cols)
+				{
+					if (c >= cellCounts[g]) break;
+					writer.write("\t");
+					writer.write(values.get(row[c] & 0xFF));
+				}
+			}
+		}
+	}
+}
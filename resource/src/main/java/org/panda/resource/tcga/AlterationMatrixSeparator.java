@@ -5,13 +5,43 @@ import org.panda.utility.statistics.Histogram;
 import org.panda.utility.statistics.OrderedAveragePlot;
 
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Created by babur on 2/9/2016.
  */
 public class AlterationMatrixSeparator
 {
+	private static final int IO_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Mutation-only codes for the cell codes of a matrix where 1 is a mutation, 2 and 3 are other alterations, and 4 and
+	 * 5 are those alterations together with a mutation.
+	 */
+	private static final String[] MUTATION_ONLY_CODES = new String[]{"0", "1", "0", "0", "1", "1"};
+
+	/**
+	 * How the analysis subdirectories are replicated next to each separated matrix.
+	 */
+	public enum CopyMode
+	{
+		/**
+		 * Deep copy of every file.
+		 */
+		COPY,
+
+		/**
+		 * Hard link to every file, or a symbolic link where a hard link is not possible (such as across file
+		 * systems). Falls back to a copy only if neither link can be created. A linked file shares its content with
+		 * the source and with every other replica, so it has to be passed to {@link #unshare(File)} before it is
+		 * modified in place.
+		 */
+		LINK
+	}
+
 	public static void main(String[] args) throws IOException
 	{
 //		printHistogram("/home/babur/Documents/mutex/BMEG/HNSC/TCGA-HNSC.tsv", 100);
@@ -43,7 +73,7 @@ public class AlterationMatrixSeparator
 //			"/home/babur/Documents/mutex/TCGA/PanCan-TP53/intact/1/1/DataMatrix.txt", "TP53",
 //			alt -> alt == 0);
 
-//		copyNewAnalysisDir();
+//		copyNewAnalysisDir(CopyMode.LINK);
 	}
 
 	/**
@@ -55,53 +85,143 @@ public class AlterationMatrixSeparator
 	 */
 	public static void separate(String baseDir, String wholeDir, String[] chunks) throws IOException
 	{
+		separate(baseDir, wholeDir, chunks, CopyMode.COPY);
+	}
+
+	/**
+	 * Same as {@link #separate(String, String, String[])}, replicating the analysis subdirectories with the given mode.
+	 */
+	public static void separate(String baseDir, String wholeDir, String[] chunks, CopyMode mode) throws IOException
+	{
+		String inFile = wholeDir + "/DataMatrix.txt";
+		writeSubsets(inFile, makeOutFiles(baseDir, chunks), selectChunks(readSampleAlterationCounts(inFile), chunks),
+			mode);
+	}
+
+	public static void separate(String baseDir, String wholeDir, int pieces) throws IOException
+	{
+		separate(baseDir, wholeDir, pieces, CopyMode.COPY);
+	}
+
+	/**
+	 * Same as {@link #separate(String, String, int)}, replicating the analysis subdirectories with the given mode.
+	 */
+	public static void separate(String baseDir, String wholeDir, int pieces, CopyMode mode) throws IOException
+	{
+		String inFile = wholeDir + "/DataMatrix.txt";
+		writeSubsets(inFile, makeOutFiles(baseDir, getPieceNames(pieces)),
+			selectPieces(readSampleAlterationCounts(inFile), pieces), mode);
+	}
+
+	/**
+	 * Same as {@link #separate(String, String, String[], CopyMode)}, but runs on a matrix that is already loaded.
+	 */
+	public static void separate(String baseDir, AlterationMatrix whole, String[] chunks, CopyMode mode)
+		throws IOException
+	{
+		writeSubsets(whole, makeOutFiles(baseDir, chunks), selectChunks(whole.getSampleAlterationCounts(), chunks),
+			mode);
+	}
+
+	/**
+	 * Same as {@link #separate(String, String, int, CopyMode)}, but runs on a matrix that is already loaded.
+	 */
+	public static void separate(String baseDir, AlterationMatrix whole, int pieces, CopyMode mode) throws IOException
+	{
+		writeSubsets(whole, makeOutFiles(baseDir, getPieceNames(pieces)),
+			selectPieces(whole.getSampleAlterationCounts(), pieces), mode);
+	}
+
+	public static void separateNonOutliers(String baseDir, String wholeDir) throws IOException
+	{
+		separateNonOutliers(baseDir, wholeDir, CopyMode.COPY);
+	}
+
+	/**
+	 * Same as {@link #separateNonOutliers(String, String)}, replicating the analysis subdirectories with the given
+	 * mode.
+	 */
+	public static void separateNonOutliers(String baseDir, String wholeDir, CopyMode mode) throws IOException
+	{
+		String inFile = wholeDir + "/DataMatrix.txt";
+		writeSubsets(inFile, makeOutFiles(baseDir, new String[]{"outliers-excluded"}),
+			Collections.singletonList(selectNonOutliers(readSampleAlterationCounts(inFile))), mode);
+	}
+
+	/**
+	 * Same as {@link #separateNonOutliers(String, String, CopyMode)}, but runs on a matrix that is already loaded.
+	 */
+	public static void separateNonOutliers(String baseDir, AlterationMatrix whole, CopyMode mode) throws IOException
+	{
+		writeSubsets(whole, makeOutFiles(baseDir, new String[]{"outliers-excluded"}),
+			Collections.singletonList(selectNonOutliers(whole.getSampleAlterationCounts())), mode);
+	}
+
+	/**
+	 * Creates the given subdirectories of the base directory where they do not exist.
+	 * @return the matrix file in each subdirectory
+	 */
+	private static String[] makeOutFiles(String baseDir, String[] dirNames)
+	{
+		String[] outFiles = new String[dirNames.length];
+		for (int i = 0; i < dirNames.length; i++)
+		{
+			String chunkDir = baseDir + "/" + dirNames[i];
+			if (!new File(chunkDir).exists()) new File(chunkDir).mkdir();
+			outFiles[i] = chunkDir + "/DataMatrix.txt";
+		}
+		return outFiles;
+	}
+
+	/**
+	 * Selects the samples of each chunk, where a chunk is a sample alteration count range in the format "a-b".
+	 */
+	private static List<Set<String>> selectChunks(Map<String, Integer> cnt, String[] chunks)
+	{
+		List<Set<String>> subsets = new ArrayList<>();
 		for (String chunk : chunks)
 		{
 			int min = Integer.parseInt(chunk.substring(0, chunk.indexOf("-")));
 			int max = Integer.parseInt(chunk.substring(chunk.indexOf("-") + 1));
-
-			String chunkDir = baseDir + "/" + chunk;
-			if (!new File(chunkDir).exists()) new File(chunkDir).mkdir();
-
-			writeSubset(wholeDir + "/DataMatrix.txt", chunkDir + "/DataMatrix.txt",
-				min, max);
+			subsets.add(selectByCount(cnt, min, max));
 		}
+		return subsets;
 	}
 
-	public static void separate(String baseDir, String wholeDir, int pieces) throws IOException
+	/**
+	 * @return directory names of the pieces, which are 1 to the number of pieces
+	 */
+	private static String[] getPieceNames(int pieces)
 	{
-		String inFile = wholeDir + "/DataMatrix.txt";
-		Map<String, Integer> cnt = readSampleAlterationCounts(inFile);
+		return IntStream.rangeClosed(1, pieces).mapToObj(String::valueOf).toArray(String[]::new);
+	}
 
+	/**
+	 * Splits the samples into the given number of pieces in the order of their alteration counts.
+	 */
+	private static List<Set<String>> selectPieces(Map<String, Integer> cnt, int pieces)
+	{
 		List<String> samples = new ArrayList<>(cnt.keySet());
 		Collections.sort(samples, (o1, o2) -> cnt.get(o1).compareTo(cnt.get(o2)));
 
+		List<Set<String>> subsets = new ArrayList<>();
 		for (int i = 1; i <= pieces; i++)
 		{
 			List<String> sub = samples.subList(
 				(int) (samples.size() * (i - 1) / (double) pieces),
 				((int) (samples.size() * i / (double) pieces)) - 1);
 
-			String chunkDir = baseDir + "/" + i;
-			if (!new File(chunkDir).exists()) new File(chunkDir).mkdir();
-
-			writeSubset(inFile, chunkDir + "/DataMatrix.txt", new HashSet<>(sub));
+			subsets.add(new HashSet<>(sub));
 		}
+		return subsets;
 	}
 
-	public static void separateNonOutliers(String baseDir, String wholeDir) throws IOException
+	/**
+	 * Selects the samples whose alteration count is not above the outlier threshold.
+	 */
+	private static Set<String> selectNonOutliers(Map<String, Integer> cnt)
 	{
-		String inFile = wholeDir + "/DataMatrix.txt";
-		Map<String, Integer> cnt = readSampleAlterationCounts(inFile);
-
-		List<Integer> list = new ArrayList<>(cnt.values());
-		Collections.sort(list);
-		int q1 = list.get((int) Math.floor(list.size() * 0.25));
-		int q3 = list.get((int) Math.floor(list.size() * 0.75));
-
-		double iqr = q3 - q1;
-
-		double thr = q3 + (1.5 * iqr);
+		double thr = getOutlierThreshold(cnt.values());
 
 		Set<String> subset = new HashSet<>();
 
@@ -109,37 +229,122 @@ public class AlterationMatrixSeparator
 		{
 			if (cnt.get(s) <= thr) subset.add(s);
 		}
+		return subset;
+	}
+
+	/**
+	 * Gets the alteration count above which a sample is an outlier, which is Q3 + 1.5 * IQR of the given counts.
+	 */
+	public static double getOutlierThreshold(Collection<Integer> counts)
+	{
+		List<Integer> list = new ArrayList<>(counts);
+		Collections.sort(list);
+		int q1 = list.get((int) Math.floor(list.size() * 0.25));
+		int q3 = list.get((int) Math.floor(list.size() * 0.75));
 
-		String chunkDir = baseDir + "/outliers-excluded";
-		if (!new File(chunkDir).exists()) new File(chunkDir).mkdir();
+		double iqr = q3 - q1;
 
-		writeSubset(inFile, chunkDir + "/DataMatrix.txt", subset);
+		return q3 + (1.5 * iqr);
 	}
 
 	public static void separateMutations(String baseDir, String useDir) throws IOException
+	{
+		separateMutations(baseDir, useDir, CopyMode.COPY);
+	}
+
+	/**
+	 * Same as {@link #separateMutations(String, String)}, replicating the analysis subdirectories with the given mode.
+	 */
+	public static void separateMutations(String baseDir, String useDir, CopyMode mode) throws IOException
 	{
 		String inFile = baseDir + "/" + useDir + "/DataMatrix.txt";
 
 		String newDir = baseDir + "/mutations-only";
 		if (!new File(newDir).exists()) new File(newDir).mkdir();
 
-		Scanner sc = new Scanner(new File(inFile));
-		BufferedWriter writer = new BufferedWriter(new FileWriter(newDir + "/DataMatrix.txt"));
-		writer.write(sc.nextLine());
+		remapCodes(inFile, newDir + "/DataMatrix.txt", MUTATION_ONLY_CODES, true);
 
-		while (sc.hasNextLine())
+		copySubdirs(new File(baseDir + "/" + useDir), new File(newDir), mode);
+	}
+
+	/**
+	 * Rewrites the matrix replacing each cell code with the code at that index of the given table, in a single pass
+	 * over raw bytes. Cells that are not non-negative integers, or that have no entry in the table, are copied as they
+	 * are, including empty cells at the end of a row. Lines are written with a newline, and a carriage return before
+	 * the newline of an input line is dropped.
+	 * @param codeMap output code for each input code, null entries mean no change
+	 * @param skipUnaltered whether to leave out the rows where no cell is a nonzero number after the replacement
+	 */
+	public static void remapCodes(String inFile, String outFile, String[] codeMap, boolean skipUnaltered)
+		throws IOException
+	{
+		byte[][] map = new byte[codeMap.length][];
+		boolean[] mapAltered = new boolean[codeMap.length];
+		for (int i = 0; i < codeMap.length; i++)
 		{
-			String line = sc.nextLine();
-			line = line.replaceAll("\t2", "\t0").replaceAll("\t3", "\t0").
-				        replaceAll("\t4", "\t1").replaceAll("\t5", "\t1");
+			if (codeMap[i] == null) continue;
+			map[i] = codeMap[i].getBytes();
+			int c = parseCode(map[i], 0, map[i].length);
+			mapAltered[i] = c != 0 && c != -1;
+		}
+
+		ByteLineReader reader = new ByteLineReader(inFile);
+		if (!reader.next()) throw new IOException("Empty matrix file: " + inFile);
 
-			if (line.contains("\t1")) writer.write("\n" + line);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile), IO_BUFFER_SIZE);
+		out.write(reader.getLine(), 0, reader.getLength());
+
+		ByteArrayOutputStream row = new ByteArrayOutputStream(IO_BUFFER_SIZE);
+
+		while (reader.next())
+		{
+			byte[] line = reader.getLine();
+			int fields = reader.splitAllFields();
+			boolean altered = false;
+
+			row.reset();
+			row.write('\n');
+			row.write(line, 0, reader.getFieldEnd(0));
+
+			for (int i = 1; i < fields; i++)
+			{
+				int start = reader.getFieldStart(i);
+				int end = reader.getFieldEnd(i);
+				int code = parseCode(line, start, end);
+
+				row.write('\t');
+				if (code >= 0 && code < map.length && map[code] != null)
+				{
+					row.write(map[code], 0, map[code].length);
+					altered |= mapAltered[code];
+				}
+				else
+				{
+					row.write(line, start, end - start);
+					altered |= code > 0;
+				}
+			}
+
+			if (altered || !skipUnaltered) row.writeTo(out);
 		}
 
-		sc.close();
-		writer.close();
+		reader.close();
+		out.close();
+	}
 
-		copySubdirs(new File(baseDir + "/" + useDir), new File(newDir));
+	/**
+	 * @return the non-negative integer in the byte range, or -1 if it is not one
+	 */
+	private static int parseCode(byte[] b, int start, int end)
+	{
+		if (start == end || end - start > 9) return -1;
+		int v = 0;
+		for (int i = start; i < end; i++)
+		{
+			if (b[i] < '0' || b[i] > '9') return -1;
+			v = v * 10 + (b[i] - '0');
+		}
+		return v;
 	}
 
 	public static void separateWithGeneAlterationStatus(String input, String output, String gene, AlterationSelector selector) throws IOException
@@ -147,6 +352,16 @@ public class AlterationMatrixSeparator
 		writeSubset(input, output, selectSamplesWithGeneAlterationStatus(input, gene, selector));
 	}
 
+	/**
+	 * Same as {@link #separateWithGeneAlterationStatus(String, String, String, AlterationSelector)}, but runs on a
+	 * matrix that is already loaded.
+	 */
+	public static void separateWithGeneAlterationStatus(AlterationMatrix input, String output, String gene,
+		AlterationSelector selector) throws IOException
+	{
+		writeSubset(input, output, input.selectSamples(gene, selector));
+	}
+
 	/**
 	 *
 	 * @param inFile data matrix
@@ -155,7 +370,19 @@ public class AlterationMatrixSeparator
 	 */
 	public static void writeSubset(String inFile, String outFile, int min, int max) throws IOException
 	{
-		Map<String, Integer> cnt = readSampleAlterationCounts(inFile);
+		writeSubset(inFile, outFile, selectByCount(readSampleAlterationCounts(inFile), min, max));
+	}
+
+	/**
+	 * Same as {@link #writeSubset(String, String, int, int)}, but runs on a matrix that is already loaded.
+	 */
+	public static void writeSubset(AlterationMatrix matrix, String outFile, int min, int max) throws IOException
+	{
+		writeSubset(matrix, outFile, selectByCount(matrix.getSampleAlterationCounts(), min, max));
+	}
+
+	private static Set<String> selectByCount(Map<String, Integer> cnt, int min, int max)
+	{
 		Set<String> samples = new HashSet<>();
 		for (String s : cnt.keySet())
 		{
@@ -163,50 +390,184 @@ public class AlterationMatrixSeparator
 
 			if (c >= min && c <= max) samples.add(s);
 		}
+		return samples;
+	}
+
+	/**
+	 * Same as {@link #writeSubset(String, String, Set)}, but runs on a matrix that is already loaded.
+	 */
+	public static void writeSubset(AlterationMatrix matrix, String outFile, Set<String> samples) throws IOException
+	{
+		writeSubsets(matrix, new String[]{outFile}, Collections.singletonList(samples), CopyMode.COPY);
+	}
+
+	/**
+	 * Same as {@link #writeSubsets(String, String[], List, CopyMode)}, but runs on a matrix that is already loaded.
+	 */
+	public static void writeSubsets(AlterationMatrix matrix, String[] outFiles, List<Set<String>> subsets,
+		CopyMode mode) throws IOException
+	{
+		for (int k = 0; k < outFiles.length; k++)
+		{
+			matrix.write(outFiles[k], matrix.getColumns(subsets.get(k)));
 
-		writeSubset(inFile, outFile, samples);
+			copySubdirs(new File(matrix.getFile()).getAbsoluteFile().getParentFile(),
+				new File(outFiles[k]).getAbsoluteFile().getParentFile(), mode);
+		}
 	}
 
 	public static void writeSubset(String inFile, String outFile, Set<String> samples) throws IOException
 	{
-		Scanner sc = new Scanner(new File(inFile));
-		String line = sc.nextLine();
-		String[] header = line.split("\t");
+		writeSubsets(inFile, new String[]{outFile}, Collections.singletonList(samples), CopyMode.COPY);
+	}
 
-		BufferedWriter writer = new BufferedWriter(new FileWriter(outFile));
-		writer.write(header[0]);
+	/**
+	 * Writes several sample subsets of the matrix in a single scan of the input. The kept column positions of each
+	 * subset are computed once from the header, then each row is read once and its kept cells are copied to all the
+	 * outputs as raw byte ranges, without decoding them. The subdirectories next to the input are copied next to each
+	 * output.
+	 * @param outFiles output matrix file for each subset
+	 * @param subsets samples to keep in each output
+	 * @param mode how the subdirectories are replicated
+	 */
+	public static void writeSubsets(String inFile, String[] outFiles, List<Set<String>> subsets, CopyMode mode)
+		throws IOException
+	{
+		ByteLineReader reader = new ByteLineReader(inFile);
+		if (!reader.next()) throw new IOException("Empty matrix file: " + inFile);
+		String[] header = new String(reader.getLine(), 0, reader.getLength()).split("\t");
 
-		for (int i = 1; i < header.length; i++)
+		int n = outFiles.length;
+		int[][] cols = new int[n][];
+		OutputStream[] outs = new OutputStream[n];
+
+		for (int k = 0; k < n; k++)
 		{
-			if (samples.contains(header[i])) writer.write("\t" + header[i]);
+			Set<String> samples = subsets.get(k);
+			cols[k] = IntStream.range(1, header.length).filter(i -> samples.contains(header[i])).toArray();
+			outs[k] = new BufferedOutputStream(new FileOutputStream(outFiles[k]), IO_BUFFER_SIZE);
 		}
 
-		while (sc.hasNextLine())
+		boolean first = true;
+		do
 		{
-			String[] token = sc.nextLine().split("\t");
-			writer.write("\n" + token[0]);
-			for (int i = 1; i < token.length; i++)
+			byte[] line = reader.getLine();
+			int fields = reader.splitFields();
+
+			for (int k = 0; k < n; k++)
 			{
-				if (samples.contains(header[i])) writer.write("\t" + token[i]);
+				OutputStream out = outs[k];
+				if (!first) out.write('\n');
+				out.write(line, 0, reader.getFieldEnd(0));
+				for (int i : cols[k])
+				{
+					if (i >= fields) break;
+					out.write('\t');
+					out.write(line, reader.getFieldStart(i), reader.getFieldEnd(i) - reader.getFieldStart(i));
+				}
 			}
+			first = false;
 		}
-		writer.close();
+		while (reader.next());
 
-		copySubdirs(new File(inFile).getParentFile(), new File(outFile).getParentFile());
+		reader.close();
+		for (OutputStream out : outs)
+		{
+			out.close();
+		}
+
+		for (String outFile : outFiles)
+		{
+			copySubdirs(new File(inFile).getParentFile(), new File(outFile).getParentFile(), mode);
+		}
 	}
 
-	private static void copySubdirs(File dirFrom, File dirTo) throws IOException
+	private static void copySubdirs(File dirFrom, File dirTo, CopyMode mode) throws IOException
 	{
 		for (File dir : dirFrom.listFiles())
 		{
 			if (dir.isDirectory())
 			{
-				FileUtils.copyDirectory(dir, new File(dirTo.getPath() + "/" + dir.getName()));
+				File target = new File(dirTo.getPath() + "/" + dir.getName());
+				if (mode == CopyMode.LINK) linkDirectory(dir.toPath(), target.toPath());
+				else FileUtils.copyDirectory(dir, target);
 			}
 		}
 	}
 
-	private static void copyNewAnalysisDir() throws IOException
+	/**
+	 * Replicates the directory tree, linking the files instead of copying them. Existing files at the target are
+	 * replaced. The source files are left as they are, see {@link CopyMode#LINK}.
+	 */
+	private static void linkDirectory(Path from, Path to) throws IOException
+	{
+		Files.walkFileTree(from, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+			{
+				Files.createDirectories(to.resolve(from.relativize(dir)));
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+			{
+				Path target = to.resolve(from.relativize(file));
+				Files.deleteIfExists(target);
+
+				try
+				{
+					Files.createLink(target, file);
+				}
+				catch (IOException | UnsupportedOperationException e)
+				{
+					try
+					{
+						Files.createSymbolicLink(target, file.toAbsolutePath());
+					}
+					catch (IOException | UnsupportedOperationException e2)
+					{
+						Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Makes sure the given file is not shared with another location through a link created in the
+	 * {@link CopyMode#LINK} mode, replacing it with a private copy if it is. This is the copy-on-write step, which has
+	 * to be called before modifying a replicated file in place, since otherwise the change reaches every linked
+	 * location.
+	 */
+	public static void unshare(File file) throws IOException
+	{
+		Path path = file.toPath();
+		boolean shared = Files.isSymbolicLink(path);
+
+		if (!shared)
+		{
+			try
+			{
+				shared = ((Number) Files.getAttribute(path, "unix:nlink")).intValue() > 1;
+			}
+			catch (UnsupportedOperationException | IllegalArgumentException e)
+			{
+				// Link counts are not available on this file system, hence no hard links were created
+			}
+		}
+
+		if (shared)
+		{
+			Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), file.getName(), ".tmp");
+			Files.copy(path, tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void copyNewAnalysisDir(CopyMode mode) throws IOException
 	{
 		String base = "/home/babur/Documents/mutex/TCGA/PanCan-TP53/intact/";
 		File dirFrom = new File(base + "1/1");
@@ -215,7 +576,7 @@ public class AlterationMatrixSeparator
 		{
 			for (int j = 1; j <= i; j++)
 			{
-				copySubdirs(dirFrom, new File(base + i + "/" + j));
+				copySubdirs(dirFrom, new File(base + i + "/" + j), mode);
 			}
 		}
 	}
@@ -254,33 +615,31 @@ public class AlterationMatrixSeparator
 			String[] row = line.split("\t");
 			for (int i = 0; i < row.length; i++)
 			{
-				if (!row[i].equals("0")) map.put(samples[i], map.get(samples[i]) + 1);
+				if (!row[i].equals("0") && !row[i].equals(CoverageMask.NA)) map.put(samples[i], map.get(samples[i]) + 1);
 			}
 		}
 		sc.close();
 		return map;
 	}
 
+	/**
+	 * Selects the samples where the alteration value of the given gene satisfies the selector. The gene row is fetched
+	 * through the {@link MatrixRowIndex} of the file, which is built on the first query and saved next to the file.
+	 */
 	public static Set<String> selectSamplesWithGeneAlterationStatus(String file, String gene, AlterationSelector selector)
-		throws FileNotFoundException
+		throws IOException
 	{
-		Scanner sc = new Scanner(new File(file));
-		String[] header = sc.nextLine().split("\t");
-		String[] row = null;
-		while (sc.hasNextLine() && row == null)
-		{
-			String line = sc.nextLine();
-			if (line.startsWith(gene + "\t"))
-			{
-				row = line.split("\t");
-			}
-		}
-		if (row == null) throw new RuntimeException("Cannot find the gene: " + gene);
+		MatrixRowIndex index = MatrixRowIndex.get(file);
+		String[] header = index.getHeader().split("\t");
+		String line = index.getRow(gene);
+		if (line == null) throw new RuntimeException("Cannot find the gene: " + gene);
+		String[] row = line.split("\t");
 
 		Set<String> samples = new HashSet<>();
 		for (int i = 1; i < header.length; i++)
 		{
-			if (selector.select(Integer.parseInt(row[i]))) samples.add(header[i]);
+			// Samples where the gene is not assayed are in neither selection
+			if (!row[i].equals(CoverageMask.NA) && selector.select(Integer.parseInt(row[i]))) samples.add(header[i]);
 		}
 		return samples;
 	}
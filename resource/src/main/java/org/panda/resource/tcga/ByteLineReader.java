@@ -0,0 +1,170 @@
+package org.panda.resource.tcga;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a text file into a reused byte buffer, without decoding them to Strings. Used for passing matrix
+ * cells from input to output as raw bytes. Line terminators are not included in the line, and a carriage return
+ * before the newline is dropped.
+ */
+class ByteLineReader implements Closeable
+{
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final InputStream in;
+	private final byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+	private int limit;
+
+	/**
+	 * File offset of buf[0].
+	 */
+	private long bufOffset;
+
+	private byte[] line = new byte[BUFFER_SIZE];
+	private int length;
+	private long offset;
+
+	private int[] fieldStart = new int[1024];
+	private int[] fieldEnd = new int[1024];
+
+	ByteLineReader(String file) throws IOException
+	{
+		this(new FileInputStream(file));
+	}
+
+	ByteLineReader(InputStream in)
+	{
+		this.in = in;
+	}
+
+	/**
+	 * Reads the next line.
+	 * @return false if there are no more lines
+	 */
+	boolean next() throws IOException
+	{
+		length = 0;
+		offset = bufOffset + pos;
+		boolean any = false;
+
+		while (true)
+		{
+			if (pos == limit)
+			{
+				bufOffset += limit;
+				pos = 0;
+				limit = Math.max(0, in.read(buf));
+				if (limit == 0) break;
+			}
+
+			any = true;
+			int start = pos;
+			while (pos < limit && buf[pos] != '\n') pos++;
+			append(start, pos);
+
+			if (pos < limit)
+			{
+				pos++;
+				if (length > 0 && line[length - 1] == '\r') length--;
+				return true;
+			}
+		}
+		return any;
+	}
+
+	private void append(int from, int to)
+	{
+		int n = to - from;
+		if (length + n > line.length) line = Arrays.copyOf(line, Math.max(line.length * 2, length + n));
+		System.arraycopy(buf, from, line, length, n);
+		length += n;
+	}
+
+	/**
+	 * @return the buffer holding the current line, starting from index 0
+	 */
+	byte[] getLine()
+	{
+		return line;
+	}
+
+	/**
+	 * @return the number of bytes in the current line
+	 */
+	int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * @return the file offset where the current line starts
+	 */
+	long getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Finds the tab-delimited fields of the current line. Like {@link String#split(String)}, trailing empty fields are
+	 * not counted, but there is always at least one field.
+	 * @return number of fields
+	 */
+	int splitFields()
+	{
+		int n = splitAllFields();
+		while (n > 1 && fieldStart[n - 1] == fieldEnd[n - 1]) n--;
+		return n;
+	}
+
+	/**
+	 * Same as {@link #splitFields()}, but trailing empty fields are counted as well.
+	 * @return number of fields, which is one more than the number of tabs in the line
+	 */
+	int splitAllFields()
+	{
+		int n = 0;
+		int start = 0;
+		for (int i = 0; i <= length; i++)
+		{
+			if (i == length || line[i] == '\t')
+			{
+				if (n == fieldStart.length)
+				{
+					fieldStart = Arrays.copyOf(fieldStart, n * 2);
+					fieldEnd = Arrays.copyOf(fieldEnd, n * 2);
+				}
+				fieldStart[n] = start;
+				fieldEnd[n] = i;
+				n++;
+				start = i + 1;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return start index of the field in the line buffer, valid after {@link #splitFields()} or
+	 * {@link #splitAllFields()}
+	 */
+	int getFieldStart(int field)
+	{
+		return fieldStart[field];
+	}
+
+	/**
+	 * @return end index (exclusive) of the field in the line buffer, valid after {@link #splitFields()} or
+	 * {@link #splitAllFields()}
+	 */
+	int getFieldEnd(int field)
+	{
+		return fieldEnd[field];
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
@@ -0,0 +1,207 @@
+package org.panda.resource.tcga;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Which genes are assayed in which samples, for cohorts where some samples are sequenced with gene panels. Each sample
+ * is assigned to a panel, and samples without a panel are taken as whole exome, where every gene is assayed.
+ *
+ * Coverage of a gene is a bitset over a samples array, which is the OR of the sample bitsets of the panels that have the
+ * gene, plus the whole exome samples. Sample bitsets of the panels are cached for the last queried samples array, since
+ * the same array is usually queried for every gene.
+ */
+public class CoverageMask
+{
+	/**
+	 * Matrix value for a gene that is not assayed in a sample.
+	 */
+	public static final String NA = "NA";
+
+	/**
+	 * Panels of a sample without a panel assignment.
+	 */
+	private static final int[] EXOME = {-1};
+
+	private final Map<String, Integer> panelIDs = new HashMap<>();
+
+	/**
+	 * Panels of each sample, where -1 is whole exome. A sample has more than one panel only after its aliquots are
+	 * collapsed.
+	 */
+	private final Map<String, int[]> samplePanels = new LinkedHashMap<>();
+
+	/**
+	 * Panels that have each gene.
+	 */
+	private final Map<String, int[]> genePanels = new HashMap<>();
+
+	private String[] lastQueriedSamples;
+	private long[][] panelBits;
+	private long[] exomeBits;
+
+	/**
+	 * Reads the panel of each sample, and the genes of each panel.
+	 * @param samplePanelFile lines of sample and panel, tab separated
+	 * @param panelGenesFile lines of a panel followed by its genes, tab separated, where a panel can be on more than one
+	 * line
+	 */
+	public static CoverageMask read(String samplePanelFile, String panelGenesFile) throws IOException
+	{
+		CoverageMask mask = new CoverageMask();
+
+		for (String line : Files.readAllLines(Paths.get(panelGenesFile)))
+		{
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			String[] token = line.split("\t");
+			mask.addGenes(token[0], Arrays.asList(token).subList(1, token.length));
+		}
+
+		for (String line : Files.readAllLines(Paths.get(samplePanelFile)))
+		{
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			String[] token = line.split("\t");
+			mask.setPanel(token[0], token.length > 1 ? token[1] : null);
+		}
+		return mask;
+	}
+
+	/**
+	 * Adds genes to a panel.
+	 */
+	public synchronized void addGenes(String panel, Collection<String> genes)
+	{
+		int p = getPanelID(panel);
+		for (String gene : genes)
+		{
+			int[] panels = genePanels.get(gene);
+			if (panels == null) panels = new int[0];
+			else if (Arrays.binarySearch(panels, p) >= 0) continue;
+
+			panels = Arrays.copyOf(panels, panels.length + 1);
+			panels[panels.length - 1] = p;
+			Arrays.sort(panels);
+			genePanels.put(gene, panels);
+		}
+		lastQueriedSamples = null;
+	}
+
+	/**
+	 * Assigns a sample to a panel.
+	 * @param panel the panel, or null for whole exome
+	 */
+	public synchronized void setPanel(String sample, String panel)
+	{
+		samplePanels.put(sample, new int[]{panel == null ? -1 : getPanelID(panel)});
+		lastQueriedSamples = null;
+	}
+
+	/**
+	 * Gets a mask where the samples are renamed with the given function, such as for truncating aliquot barcodes to the
+	 * sample level. Samples that get the same name are merged, and the merged sample has the genes of all their panels.
+	 */
+	public synchronized CoverageMask collapseSamples(Function<String, String> rename)
+	{
+		CoverageMask mask = new CoverageMask();
+		mask.panelIDs.putAll(panelIDs);
+		mask.genePanels.putAll(genePanels);
+
+		for (String sample : samplePanels.keySet())
+		{
+			mask.samplePanels.merge(rename.apply(sample), samplePanels.get(sample), CoverageMask::union);
+		}
+		return mask;
+	}
+
+	/**
+	 * Gets a mask where the genes of the panels are renamed with the given function, such as for converting them to the
+	 * approved HGNC symbols. Genes that get the same name are merged, and the merged gene is on all their panels.
+	 */
+	public synchronized CoverageMask renameGenes(Function<String, String> rename)
+	{
+		CoverageMask mask = new CoverageMask();
+		mask.panelIDs.putAll(panelIDs);
+		mask.samplePanels.putAll(samplePanels);
+
+		for (String gene : genePanels.keySet())
+		{
+			mask.genePanels.merge(rename.apply(gene), genePanels.get(gene), CoverageMask::union);
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the sorted distinct panels in the given sorted panel arrays
+	 */
+	private static int[] union(int[] p1, int[] p2)
+	{
+		return IntStream.concat(Arrays.stream(p1), Arrays.stream(p2)).distinct().sorted().toArray();
+	}
+
+	private int getPanelID(String panel)
+	{
+		return panelIDs.computeIfAbsent(panel, k -> panelIDs.size());
+	}
+
+	/**
+	 * @return the samples that have a panel assignment, including the whole exome ones
+	 */
+	public Set<String> getSamples()
+	{
+		return Collections.unmodifiableSet(samplePanels.keySet());
+	}
+
+	/**
+	 * Gets the samples where the gene is assayed.
+	 * @return bitset over the indices of the given samples array
+	 */
+	public synchronized long[] getCoverage(String gene, String[] samples)
+	{
+		if (samples != lastQueriedSamples) prepare(samples);
+
+		long[] bits = exomeBits.clone();
+		int[] panels = genePanels.get(gene);
+		if (panels != null)
+		{
+			for (int p : panels)
+			{
+				long[] pb = panelBits[p];
+				for (int w = 0; w < bits.length; w++)
+				{
+					bits[w] |= pb[w];
+				}
+			}
+		}
+		return bits;
+	}
+
+	private void prepare(String[] samples)
+	{
+		int words = (samples.length + 63) >>> 6;
+		panelBits = new long[panelIDs.size()][words];
+		exomeBits = new long[words];
+
+		for (int i = 0; i < samples.length; i++)
+		{
+			int[] panels = samplePanels.getOrDefault(samples[i], EXOME);
+			for (int p : panels)
+			{
+				long[] bits = p < 0 ? exomeBits : panelBits[p];
+				bits[i >>> 6] |= 1L << i;
+			}
+		}
+		lastQueriedSamples = samples;
+	}
+
+	/**
+	 * @return whether the sample bit is set in the bitset
+	 */
+	public static boolean isSet(long[] bits, int sample)
+	{
+		return (bits[sample >>> 6] & (1L << sample)) != 0;
+	}
+}
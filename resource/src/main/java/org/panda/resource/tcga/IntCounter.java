@@ -0,0 +1,100 @@
+package org.panda.resource.tcga;
+
+import java.util.Arrays;
+
+/**
+ * Counts the occurrences of int keys, such as residue positions, in an open-addressing hash table of primitive arrays,
+ * without boxing.
+ */
+class IntCounter
+{
+	private int[] keys = new int[16];
+
+	/**
+	 * Count of each slot, where zero marks an empty slot.
+	 */
+	private int[] counts = new int[16];
+	private int size;
+
+	void increment(int key)
+	{
+		if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+
+		int i = slot(key, keys.length);
+		while (counts[i] != 0 && keys[i] != key) i = (i + 1) & (keys.length - 1);
+
+		if (counts[i] == 0)
+		{
+			keys[i] = key;
+			size++;
+		}
+		counts[i]++;
+	}
+
+	/**
+	 * @return the count of the key, zero if it is not counted
+	 */
+	int get(int key)
+	{
+		int i = slot(key, keys.length);
+		while (counts[i] != 0)
+		{
+			if (keys[i] == key) return counts[i];
+			i = (i + 1) & (keys.length - 1);
+		}
+		return 0;
+	}
+
+	/**
+	 * @return number of distinct keys
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	void clear()
+	{
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	/**
+	 * @return the keys that are counted at least the given times, sorted
+	 */
+	int[] getKeys(int minCount)
+	{
+		int[] k = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (counts[i] >= minCount && counts[i] > 0) k[n++] = keys[i];
+		}
+		k = Arrays.copyOf(k, n);
+		Arrays.sort(k);
+		return k;
+	}
+
+	private void rehash(int capacity)
+	{
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new int[capacity];
+		counts = new int[capacity];
+
+		for (int j = 0; j < oldKeys.length; j++)
+		{
+			if (oldCounts[j] == 0) continue;
+			int i = slot(oldKeys[j], capacity);
+			while (counts[i] != 0) i = (i + 1) & (capacity - 1);
+			keys[i] = oldKeys[j];
+			counts[i] = oldCounts[j];
+		}
+	}
+
+	private static int slot(int key, int capacity)
+	{
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (capacity - 1);
+	}
+}
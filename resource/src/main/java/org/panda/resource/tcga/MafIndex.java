@@ -0,0 +1,396 @@
+package org.panda.resource.tcga;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Index of the data rows of a MAF file by gene symbol and by sample barcode, so that the mutations of a few genes can be
+ * read with positioned reads instead of parsing the whole file. The index is built on first use and saved next to the
+ * MAF as a compact binary sidecar file, which is reused as long as the MAF file does not change.
+ *
+ * Rows are numbered in file order, and the rows of each gene and each sample are kept as sorted row numbers. Rows are
+ * read through one channel that stays open, see {@link SidecarIndex}.
+ */
+public class MafIndex extends SidecarIndex
+{
+	public static final String SUFFIX = ".mafidx";
+
+	private static final int MAGIC = 0x4D414649;
+
+	private static final Map<String, MafIndex> cache = newCache();
+
+	private long headerOffset;
+	private int headerLength;
+
+	private int rowCount;
+	private long[] offsets = new long[1024];
+	private int[] lengths = new int[1024];
+
+	/**
+	 * Variant_Classification of each row, as an index in the types list.
+	 */
+	private short[] typeOf = new short[1024];
+	private final List<String> types = new ArrayList<>();
+
+	private final Postings geneRows = new Postings();
+	private final Postings sampleRows = new Postings();
+
+	private MafIndex(File file, long size, long modified)
+	{
+		super(file, size, modified);
+	}
+
+	/**
+	 * Gets the index of the given MAF file, loading it from the sidecar file if it is up to date, or building it
+	 * otherwise.
+	 */
+	public static MafIndex get(String mafFile) throws IOException
+	{
+		return get(mafFile, SUFFIX, cache, MafIndex::load, MafIndex::build);
+	}
+
+	/**
+	 * Sorted row numbers of each key.
+	 */
+	private static class Postings
+	{
+		final Map<String, Integer> ids = new LinkedHashMap<>();
+		final List<int[]> rows = new ArrayList<>();
+		final List<Integer> sizes = new ArrayList<>();
+
+		void add(String key, int row)
+		{
+			Integer id = ids.get(key);
+			if (id == null)
+			{
+				id = rows.size();
+				ids.put(key, id);
+				rows.add(new int[4]);
+				sizes.add(0);
+			}
+
+			int n = sizes.get(id);
+			int[] r = rows.get(id);
+			if (n == r.length) rows.set(id, r = Arrays.copyOf(r, n * 2));
+			r[n] = row;
+			sizes.set(id, n + 1);
+		}
+
+		/**
+		 * Trims the row arrays to their sizes, after all rows are added.
+		 */
+		void trim()
+		{
+			for (int i = 0; i < rows.size(); i++)
+			{
+				rows.set(i, Arrays.copyOf(rows.get(i), sizes.get(i)));
+			}
+		}
+
+		int[] get(String key)
+		{
+			Integer id = ids.get(key);
+			return id == null ? new int[0] : rows.get(id);
+		}
+
+		void write(DataOutputStream out) throws IOException
+		{
+			out.writeInt(ids.size());
+			for (String key : ids.keySet())
+			{
+				int[] r = rows.get(ids.get(key));
+				out.writeUTF(key);
+				out.writeInt(r.length);
+				for (int row : r)
+				{
+					out.writeInt(row);
+				}
+			}
+		}
+
+		/**
+		 * @param rowCount number of rows in the index, which no key can have more than
+		 */
+		void read(DataInputStream in, int rowCount) throws IOException
+		{
+			int n = readCount(in, rowCount);
+			for (int i = 0; i < n; i++)
+			{
+				String key = in.readUTF();
+				int[] r = new int[readCount(in, rowCount)];
+				for (int j = 0; j < r.length; j++)
+				{
+					r[j] = in.readInt();
+				}
+				ids.put(key, rows.size());
+				rows.add(r);
+				sizes.add(r.length);
+			}
+		}
+	}
+
+	private static MafIndex build(File f) throws IOException
+	{
+		MafIndex index = new MafIndex(f, f.length(), f.lastModified());
+		Map<String, Integer> typeIDs = new HashMap<>();
+
+		try (ByteLineReader reader = new ByteLineReader(f.getPath()))
+		{
+			int sampleInd = -1;
+			int typeInd = -1;
+
+			while (reader.next())
+			{
+				byte[] line = reader.getLine();
+				int length = reader.getLength();
+				if (length == 0 || line[0] == '#') continue;
+
+				int n = reader.splitFields();
+
+				if (sampleInd < 0)
+				{
+					// Lines before the header are skipped, as MutationReader does
+					if (!startsWith(line, length, "Hugo_Symbol")) continue;
+
+					for (int i = 0; i < n; i++)
+					{
+						String col = field(reader, i);
+						if (col.equals("Tumor_Sample_Barcode")) sampleInd = i;
+						else if (col.equals("Variant_Classification")) typeInd = i;
+					}
+					if (sampleInd < 0 || typeInd < 0) throw new IOException("Not a MAF file: " + f);
+
+					index.headerOffset = reader.getOffset();
+					index.headerLength = length;
+					continue;
+				}
+
+				if (startsWith(line, length, "Hugo_Symbol")) continue;
+
+				// Rows without a gene symbol are dropped by MutationReader, so they are not indexed
+				String gene = field(reader, 0);
+				if (gene.isEmpty() || gene.equals(".")) continue;
+
+				String type = typeInd < n ? field(reader, typeInd) : "";
+				Integer t = typeIDs.get(type);
+				if (t == null)
+				{
+					t = index.types.size();
+					typeIDs.put(type, t);
+					index.types.add(type);
+				}
+
+				int row = index.addRow(reader.getOffset(), length, t);
+				index.geneRows.add(gene, row);
+				index.sampleRows.add(sampleInd < n ? field(reader, sampleInd) : "", row);
+			}
+
+			if (sampleInd < 0) throw new IOException("No MAF header in " + f);
+		}
+
+		index.geneRows.trim();
+		index.sampleRows.trim();
+		return index;
+	}
+
+	private static boolean startsWith(byte[] line, int length, String prefix)
+	{
+		if (length < prefix.length()) return false;
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if (line[i] != prefix.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private static String field(ByteLineReader reader, int i)
+	{
+		int start = reader.getFieldStart(i);
+		return new String(reader.getLine(), start, reader.getFieldEnd(i) - start, StandardCharsets.UTF_8);
+	}
+
+	private int addRow(long offset, int length, int type)
+	{
+		if (rowCount == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, rowCount * 2);
+			lengths = Arrays.copyOf(lengths, rowCount * 2);
+			typeOf = Arrays.copyOf(typeOf, rowCount * 2);
+		}
+		offsets[rowCount] = offset;
+		lengths[rowCount] = length;
+		typeOf[rowCount] = (short) type;
+		return rowCount++;
+	}
+
+	private static MafIndex load(File f, InputStream sidecar) throws IOException
+	{
+		DataInputStream in = new DataInputStream(sidecar);
+		if (in.readInt() != MAGIC) return null;
+
+		MafIndex index = new MafIndex(f, in.readLong(), in.readLong());
+		index.headerOffset = in.readLong();
+		index.headerLength = in.readInt();
+
+		// A row takes at least one byte of the file, and so does a type name
+		int t = readCount(in, index.size);
+		for (int i = 0; i < t; i++)
+		{
+			index.types.add(in.readUTF());
+		}
+
+		int n = readCount(in, index.size);
+		index.rowCount = n;
+		index.offsets = new long[n];
+		index.lengths = new int[n];
+		index.typeOf = new short[n];
+		for (int i = 0; i < n; i++)
+		{
+			index.offsets[i] = in.readLong();
+			index.lengths[i] = in.readInt();
+			index.typeOf[i] = in.readShort();
+		}
+
+		index.geneRows.read(in, n);
+		index.sampleRows.read(in, n);
+		return index;
+	}
+
+	@Override
+	protected void write(OutputStream stream) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeLong(size);
+		out.writeLong(modified);
+		out.writeLong(headerOffset);
+		out.writeInt(headerLength);
+
+		out.writeInt(types.size());
+		for (String type : types)
+		{
+			out.writeUTF(type);
+		}
+
+		out.writeInt(rowCount);
+		for (int i = 0; i < rowCount; i++)
+		{
+			out.writeLong(offsets[i]);
+			out.writeInt(lengths[i]);
+			out.writeShort(typeOf[i]);
+		}
+
+		geneRows.write(out);
+		sampleRows.write(out);
+		out.flush();
+	}
+
+	/**
+	 * @return gene symbols as they appear in the file
+	 */
+	public Set<String> getGenes()
+	{
+		return Collections.unmodifiableSet(geneRows.ids.keySet());
+	}
+
+	/**
+	 * @return sample barcodes as they appear in the file
+	 */
+	public Set<String> getSamples()
+	{
+		return Collections.unmodifiableSet(sampleRows.ids.keySet());
+	}
+
+	/**
+	 * @return sorted row numbers of the gene. Do not modify the returned array.
+	 */
+	public int[] getGeneRows(String gene)
+	{
+		return geneRows.get(gene);
+	}
+
+	/**
+	 * @return sorted row numbers of the sample. Do not modify the returned array.
+	 */
+	public int[] getSampleRows(String sample)
+	{
+		return sampleRows.get(sample);
+	}
+
+	/**
+	 * @return Variant_Classification of the row
+	 */
+	public String getType(int row)
+	{
+		return types.get(typeOf[row]);
+	}
+
+	/**
+	 * @return the rows that are in both sorted row arrays
+	 */
+	public static int[] intersect(int[] a, int[] b)
+	{
+		int[] r = new int[Math.min(a.length, b.length)];
+		int n = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length; )
+		{
+			if (a[i] < b[j]) i++;
+			else if (a[i] > b[j]) j++;
+			else
+			{
+				r[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(r, n);
+	}
+
+	/**
+	 * @return the header line of the MAF
+	 */
+	public String getHeader() throws IOException
+	{
+		return new String(read(headerOffset, headerLength), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the given rows with positioned reads. Consecutive rows in the file are fetched with a single read.
+	 * @param rows sorted row numbers
+	 * @return row lines, in the given order
+	 */
+	public List<String> readRows(int[] rows) throws IOException
+	{
+		List<String> lines = new ArrayList<>(rows.length);
+
+		for (int i = 0; i < rows.length; )
+		{
+			int j = i + 1;
+			while (j < rows.length && rows[j] == rows[j - 1] + 1) j++;
+
+			long start = offsets[rows[i]];
+			long end = offsets[rows[j - 1]] + lengths[rows[j - 1]];
+
+			if (end - start > Integer.MAX_VALUE)
+			{
+				// Too long for a single buffer, read the rows one by one
+				for (int k = i; k < j; k++)
+				{
+					lines.add(new String(read(offsets[rows[k]], lengths[rows[k]]), StandardCharsets.UTF_8));
+				}
+			}
+			else
+			{
+				byte[] block = read(start, (int) (end - start));
+				for (int k = i; k < j; k++)
+				{
+					int from = (int) (offsets[rows[k]] - start);
+					lines.add(new String(block, from, lengths[rows[k]], StandardCharsets.UTF_8));
+				}
+			}
+			i = j;
+		}
+		return lines;
+	}
+}
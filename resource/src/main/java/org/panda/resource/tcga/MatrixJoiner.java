@@ -0,0 +1,410 @@
+package org.panda.resource.tcga;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Joins mutation and copy number matrices of a cohort into one coded alteration matrix, in the codes that
+ * {@link AlterationMatrixSeparator#separateMutations(String, String)} expects: 0 none, 1 mutation, 2 amplification,
+ * 3 deletion, 4 mutation and amplification, 5 mutation and deletion.
+ *
+ * Gene rows are merged k-way with a priority queue over per-input cursors, so only one row per input is held in
+ * memory. An input whose rows are not sorted by gene, such as what {@link org.panda.resource.PanCanMAFToMatrix} writes,
+ * is first sorted into a temporary file with an external merge sort. Output samples are the union of the input
+ * samples, in the order they are first seen, and output genes are the union of the input genes, sorted. When a gene
+ * has more than one row in an input, its first row is used.
+ *
+ * A gene that is missing in an input is unaltered in that input. A sample that is missing in an input, or that is
+ * {@link CoverageMask#NA} in it, has no data in that input, and it is NA in the output unless another input has an
+ * alteration for it.
+ */
+public class MatrixJoiner
+{
+	public enum Type
+	{
+		/**
+		 * A cell that is not "0" or "NA" is a mutation.
+		 */
+		MUTATION,
+
+		/**
+		 * Thresholded copy number, where 2 or more is an amplification and -2 or less is a deletion.
+		 */
+		CNA
+	}
+
+	/**
+	 * Number of rows that are sorted in memory at a time when an input has to be sorted.
+	 */
+	public static final int SORT_CHUNK_ROWS = 10000;
+
+	private static final int MUT = 1;
+	private static final int AMP = 2;
+	private static final int DEL = 4;
+	private static final int NO_DATA = 8;
+
+	/**
+	 * Output code for each combination of the above alteration flags.
+	 */
+	private static final String[] CODES = {"0", "1", "2", "4", "3", "5", "2", "4"};
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 3 || args.length % 2 == 0)
+		{
+			System.err.println("usage: MatrixJoiner out-file mutation|cna matrix-file [mutation|cna matrix-file ...]");
+			System.exit(1);
+		}
+
+		Type[] types = new Type[(args.length - 1) / 2];
+		String[] files = new String[types.length];
+		for (int i = 0; i < types.length; i++)
+		{
+			types[i] = Type.valueOf(args[i * 2 + 1].toUpperCase(Locale.ROOT));
+			files[i] = args[i * 2 + 2];
+		}
+		join(files, types, args[0]);
+	}
+
+	/**
+	 * Reading position in one input.
+	 */
+	private static class Cursor implements AutoCloseable
+	{
+		final String file;
+		final Type type;
+
+		/**
+		 * Sorted copy of the input, or null if the input is already sorted.
+		 */
+		final Path sorted;
+
+		final BufferedReader reader;
+		final String[] samples;
+
+		/**
+		 * Output column of each input column.
+		 */
+		int[] columns;
+
+		String gene;
+		String[] row;
+
+		Cursor(String file, Type type, int chunkRows) throws IOException
+		{
+			this.file = file;
+			this.type = type;
+			this.sorted = isSorted(file) ? null : sort(file, chunkRows);
+			this.reader = Files.newBufferedReader(sorted == null ? Paths.get(file) : sorted, StandardCharsets.UTF_8);
+
+			String header = reader.readLine();
+			if (header == null) throw new IOException("Empty matrix file: " + file);
+			String[] token = header.split("\t");
+			this.samples = Arrays.copyOfRange(token, 1, token.length);
+		}
+
+		/**
+		 * Moves to the next gene row, skipping the repeated rows of the current gene.
+		 * @return false at the end of the input
+		 */
+		boolean next() throws IOException
+		{
+			String prev = gene;
+			String line;
+			do
+			{
+				line = reader.readLine();
+				if (line == null)
+				{
+					gene = null;
+					return false;
+				}
+			}
+			while (line.isEmpty() || (prev != null && getGene(line).equals(prev)));
+
+			row = line.split("\t");
+			gene = row[0];
+
+			if (prev != null && prev.compareTo(gene) > 0)
+				throw new IOException("Rows are not sorted by gene at " + gene + ": " + file);
+			return true;
+		}
+
+		/**
+		 * Adds the alteration flags of the current row to the output row.
+		 */
+		void addFlags(int[] flags)
+		{
+			int n = Math.min(row.length - 1, columns.length);
+			for (int i = 0; i < n; i++)
+			{
+				String v = row[i + 1];
+				if (v.equals(CoverageMask.NA)) flags[columns[i]] |= NO_DATA;
+				else if (type == Type.MUTATION)
+				{
+					if (!v.equals("0") && !v.isEmpty()) flags[columns[i]] |= MUT;
+				}
+				else if ((flags[columns[i]] & (AMP | DEL)) == 0)
+				{
+					int c = parseCNA(v);
+					if (c >= 2) flags[columns[i]] |= AMP;
+					else if (c <= -2) flags[columns[i]] |= DEL;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			reader.close();
+			if (sorted != null) Files.deleteIfExists(sorted);
+		}
+	}
+
+	private static String getGene(String line)
+	{
+		int tab = line.indexOf('\t');
+		return tab < 0 ? line : line.substring(0, tab);
+	}
+
+	/**
+	 * @return true if the rows of the matrix file are in the order of their genes
+	 */
+	private static boolean isSorted(String file) throws IOException
+	{
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8))
+		{
+			reader.readLine();
+			String prev = null;
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				if (line.isEmpty()) continue;
+				String gene = getGene(line);
+				if (prev != null && prev.compareTo(gene) > 0) return false;
+				prev = gene;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sorts the rows of the matrix file by gene into a temporary file, keeping the header line at the top. Runs of the
+	 * given number of rows are sorted in memory and written to temporary files, which are then merged. The sort is
+	 * stable, so the rows of a gene stay in their input order.
+	 * @return the sorted temporary file
+	 */
+	private static Path sort(String file, int chunkRows) throws IOException
+	{
+		List<Path> runs = new ArrayList<>();
+		Path out = Files.createTempFile("matrix-join", ".txt");
+
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8))
+		{
+			String header = reader.readLine();
+			if (header == null) throw new IOException("Empty matrix file: " + file);
+
+			List<String> chunk = new ArrayList<>(chunkRows);
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				if (line.isEmpty()) continue;
+				chunk.add(line);
+				if (chunk.size() == chunkRows) runs.add(writeRun(chunk));
+			}
+			if (!chunk.isEmpty() || runs.isEmpty()) runs.add(writeRun(chunk));
+
+			mergeRuns(header, runs, out);
+			return out;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			Files.deleteIfExists(out);
+			throw e;
+		}
+		finally
+		{
+			for (Path run : runs)
+			{
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the rows by gene, writes them to a temporary file, and clears the list.
+	 */
+	private static Path writeRun(List<String> rows) throws IOException
+	{
+		rows.sort(Comparator.comparing(MatrixJoiner::getGene));
+		Path run = Files.createTempFile("matrix-join-run", ".txt");
+		Files.write(run, rows, StandardCharsets.UTF_8);
+		rows.clear();
+		return run;
+	}
+
+	/**
+	 * Merges the sorted runs into one file. Rows of the same gene are taken in the order of their runs, which keeps the
+	 * sort stable.
+	 */
+	private static void mergeRuns(String header, List<Path> runs, Path out) throws IOException
+	{
+		List<BufferedReader> readers = new ArrayList<>();
+		try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8))
+		{
+			writer.write(header);
+
+			String[] heads = new String[runs.size()];
+			PriorityQueue<Integer> queue = new PriorityQueue<>((r1, r2) ->
+			{
+				int c = getGene(heads[r1]).compareTo(getGene(heads[r2]));
+				return c != 0 ? c : Integer.compare(r1, r2);
+			});
+
+			for (int r = 0; r < runs.size(); r++)
+			{
+				readers.add(Files.newBufferedReader(runs.get(r), StandardCharsets.UTF_8));
+				heads[r] = readers.get(r).readLine();
+				if (heads[r] != null) queue.add(r);
+			}
+
+			while (!queue.isEmpty())
+			{
+				int r = queue.poll();
+				writer.write("\n" + heads[r]);
+				heads[r] = readers.get(r).readLine();
+				if (heads[r] != null) queue.add(r);
+			}
+		}
+		finally
+		{
+			for (BufferedReader reader : readers)
+			{
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the integer value of a copy number cell, or 0 if it is not an integer
+	 */
+	private static int parseCNA(String v)
+	{
+		try
+		{
+			return Integer.parseInt(v);
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Joins the given matrices into one coded matrix.
+	 */
+	public static void join(String[] files, Type[] types, String outFile) throws IOException
+	{
+		join(files, types, outFile, SORT_CHUNK_ROWS);
+	}
+
+	/**
+	 * Joins the given matrices into one coded matrix.
+	 * @param chunkRows number of rows that are sorted in memory at a time when an input is not sorted
+	 */
+	public static void join(String[] files, Type[] types, String outFile, int chunkRows) throws IOException
+	{
+		List<Cursor> cursors = new ArrayList<>();
+		try
+		{
+			for (int i = 0; i < files.length; i++)
+			{
+				cursors.add(new Cursor(files[i], types[i], chunkRows));
+			}
+
+			// Merged sample dictionary
+			Map<String, Integer> sampleIndex = new LinkedHashMap<>();
+			for (Cursor cursor : cursors)
+			{
+				cursor.columns = new int[cursor.samples.length];
+				for (int i = 0; i < cursor.samples.length; i++)
+				{
+					Integer c = sampleIndex.get(cursor.samples[i]);
+					if (c == null)
+					{
+						c = sampleIndex.size();
+						sampleIndex.put(cursor.samples[i], c);
+					}
+					cursor.columns[i] = c;
+				}
+			}
+
+			// Samples that are missing in an input have no data there
+			int[] initial = new int[sampleIndex.size()];
+			for (Cursor cursor : cursors)
+			{
+				boolean[] has = new boolean[initial.length];
+				for (int c : cursor.columns)
+				{
+					has[c] = true;
+				}
+				for (int c = 0; c < has.length; c++)
+				{
+					if (!has[c]) initial[c] = NO_DATA;
+				}
+			}
+
+			PriorityQueue<Cursor> queue = new PriorityQueue<>((c1, c2) -> c1.gene.compareTo(c2.gene));
+			for (Cursor cursor : cursors)
+			{
+				if (cursor.next()) queue.add(cursor);
+			}
+
+			int[] flags = new int[initial.length];
+
+			try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8))
+			{
+				for (String sample : sampleIndex.keySet())
+				{
+					writer.write("\t" + sample);
+				}
+
+				List<Cursor> current = new ArrayList<>();
+				while (!queue.isEmpty())
+				{
+					String gene = queue.peek().gene;
+					System.arraycopy(initial, 0, flags, 0, flags.length);
+
+					// Take the rows of the gene in input order, since the first copy number input has priority
+					current.clear();
+					while (!queue.isEmpty() && queue.peek().gene.equals(gene)) current.add(queue.poll());
+					current.sort(Comparator.comparingInt(cursors::indexOf));
+
+					for (Cursor cursor : current)
+					{
+						cursor.addFlags(flags);
+						if (cursor.next()) queue.add(cursor);
+					}
+
+					writer.write("\n" + gene);
+					for (int f : flags)
+					{
+						writer.write("\t");
+						writer.write(f == NO_DATA ? CoverageMask.NA : CODES[f & ~NO_DATA]);
+					}
+				}
+			}
+		}
+		finally
+		{
+			for (Cursor cursor : cursors)
+			{
+				cursor.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package org.panda.resource.tcga;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Index of the gene rows of a text matrix, mapping each gene to the byte offset and length of its row, so that a row
+ * can be fetched with a single positioned read instead of scanning the file. The index is built on first use and
+ * saved next to the matrix as a sidecar file, which is reused as long as the matrix file does not change. Rows are
+ * read through one channel that stays open, see {@link SidecarIndex}.
+ */
+public class MatrixRowIndex extends SidecarIndex
+{
+	public static final String SUFFIX = ".idx";
+
+	private static final String MAGIC = "#row-index";
+
+	private static final Map<String, MatrixRowIndex> cache = newCache();
+
+	private int headerLength;
+	private final Map<String, Integer> rowOf = new HashMap<>();
+	private long[] offsets = new long[1024];
+	private int[] lengths = new int[1024];
+
+	private MatrixRowIndex(File file, long size, long modified)
+	{
+		super(file, size, modified);
+	}
+
+	/**
+	 * Gets the index of the given matrix file, loading it from the sidecar file if it is up to date, or building it
+	 * otherwise.
+	 */
+	public static MatrixRowIndex get(String matrixFile) throws IOException
+	{
+		return get(matrixFile, SUFFIX, cache, MatrixRowIndex::load, MatrixRowIndex::build);
+	}
+
+	private static MatrixRowIndex build(File f) throws IOException
+	{
+		MatrixRowIndex index = new MatrixRowIndex(f, f.length(), f.lastModified());
+
+		try (ByteLineReader reader = new ByteLineReader(f.getPath()))
+		{
+			if (!reader.next()) throw new IOException("Empty matrix file: " + f);
+			index.headerLength = reader.getLength();
+
+			while (reader.next())
+			{
+				byte[] line = reader.getLine();
+				int tab = 0;
+				while (tab < reader.getLength() && line[tab] != '\t') tab++;
+
+				// Only rows with values can be selected, same as searching for the gene and a tab
+				if (tab < reader.getLength())
+				{
+					index.add(new String(line, 0, tab, StandardCharsets.UTF_8), reader.getOffset(), reader.getLength());
+				}
+			}
+		}
+		return index;
+	}
+
+	private void add(String gene, long offset, int length)
+	{
+		if (rowOf.containsKey(gene)) return;
+
+		int i = rowOf.size();
+		if (i == offsets.length)
+		{
+			offsets = Arrays.copyOf(offsets, i * 2);
+			lengths = Arrays.copyOf(lengths, i * 2);
+		}
+		offsets[i] = offset;
+		lengths[i] = length;
+		rowOf.put(gene, i);
+	}
+
+	private static MatrixRowIndex load(File f, InputStream sidecar) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(sidecar, StandardCharsets.UTF_8));
+
+		String[] token = reader.readLine().split("\t");
+		if (token.length < 4 || !token[0].equals(MAGIC)) return null;
+
+		MatrixRowIndex index = new MatrixRowIndex(f, Long.parseLong(token[1]), Long.parseLong(token[2]));
+		index.headerLength = Integer.parseInt(token[3]);
+
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			token = line.split("\t");
+			index.add(token[0], Long.parseLong(token[1]), Integer.parseInt(token[2]));
+		}
+		return index;
+	}
+
+	@Override
+	protected void write(OutputStream out) throws IOException
+	{
+		String[] genes = new String[rowOf.size()];
+		rowOf.forEach((gene, i) -> genes[i] = gene);
+
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		writer.write(MAGIC + "\t" + size + "\t" + modified + "\t" + headerLength);
+		for (int i = 0; i < genes.length; i++)
+		{
+			writer.write("\n" + genes[i] + "\t" + offsets[i] + "\t" + lengths[i]);
+		}
+		writer.flush();
+	}
+
+	public boolean contains(String gene)
+	{
+		return rowOf.containsKey(gene);
+	}
+
+	public Set<String> getGenes()
+	{
+		return Collections.unmodifiableSet(rowOf.keySet());
+	}
+
+	/**
+	 * @return the header line of the matrix
+	 */
+	public String getHeader() throws IOException
+	{
+		return new String(read(0, headerLength), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the row line of the gene, or null if the gene is not in the matrix
+	 */
+	public String getRow(String gene) throws IOException
+	{
+		Integer i = rowOf.get(gene);
+		if (i == null) return null;
+		return new String(read(offsets[i], lengths[i]), StandardCharsets.UTF_8);
+	}
+}
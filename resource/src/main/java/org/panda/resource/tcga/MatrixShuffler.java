@@ -0,0 +1,165 @@
+package org.panda.resource.tcga;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Generates shuffled alteration matrices as null models for mutual exclusivity testing. The shuffling preserves the
+ * number of altered samples of each gene and the number of altered genes of each sample. It is a Markov chain of edge
+ * swaps, where the alterations (g1, s1) and (g2, s2) are replaced with (g1, s2) and (g2, s1) if neither exists. A swap
+ * into a cell that is not assayed is rejected, so the NA cells stay where they are, and the value of an alteration,
+ * such as its copy number code, moves with it.
+ *
+ * Each replicate gets its own random stream split from a single seed, so that the results do not depend on the number
+ * of threads.
+ */
+public class MatrixShuffler
+{
+	/**
+	 * Default number of attempted swaps per alteration.
+	 */
+	public static final int DEFAULT_SWAPS_PER_EDGE = 10;
+
+	/**
+	 * Default directory of a replicate under the output directory, which is the whole directory that the separation to
+	 * chunks uses. %d is the replicate number.
+	 */
+	public static final String DEFAULT_LAYOUT = "PanCan-shuffled-%d/1/1";
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 3)
+		{
+			System.err.println("usage: MatrixShuffler whole-matrix out-dir replicates [seed [threads [layout]]]");
+			System.exit(1);
+		}
+
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : System.currentTimeMillis();
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		String layout = args.length > 5 ? args[5] : DEFAULT_LAYOUT;
+
+		generate(args[0], args[1], layout, Integer.parseInt(args[2]), seed, threads);
+	}
+
+	/**
+	 * Writes the given number of shuffled replicates of the matrix in the {@link #DEFAULT_LAYOUT}.
+	 */
+	public static void generate(String wholeMatrix, String outDir, int replicates, long seed, int threads)
+		throws IOException, InterruptedException
+	{
+		generate(wholeMatrix, outDir, DEFAULT_LAYOUT, replicates, seed, threads);
+	}
+
+	/**
+	 * Writes the given number of shuffled replicates of the matrix. Replicate k goes to
+	 * outDir/layout/DataMatrix.txt, where the %d in the layout is replaced with k.
+	 * @param layout directory of a replicate relative to the output directory, which has to contain %d
+	 */
+	public static void generate(String wholeMatrix, String outDir, String layout, int replicates, long seed,
+		int threads) throws IOException, InterruptedException
+	{
+		if (!layout.contains("%d"))
+		{
+			throw new IllegalArgumentException("Replicate layout has no %d for the replicate number: " + layout);
+		}
+
+		AlterationBitMatrix matrix = AlterationBitMatrix.read(wholeMatrix);
+
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] rnd = new SplittableRandom[replicates];
+		for (int k = 0; k < replicates; k++)
+		{
+			rnd[k] = root.split();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+
+		for (int k = 1; k <= replicates; k++)
+		{
+			int rep = k;
+			futures.add(executor.submit(() ->
+			{
+				String dir = outDir + "/" + String.format(Locale.ROOT, layout, rep);
+				Files.createDirectories(Paths.get(dir));
+				shuffle(matrix, DEFAULT_SWAPS_PER_EDGE, rnd[rep - 1]).write(dir + "/DataMatrix.txt");
+				System.out.println("replicate " + rep + " done");
+				return null;
+			}));
+		}
+		executor.shutdown();
+
+		try
+		{
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (ExecutionException e)
+		{
+			executor.shutdownNow();
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Creates a shuffled copy of the matrix.
+	 * @param swapsPerEdge number of attempted swaps per alteration
+	 */
+	public static AlterationBitMatrix shuffle(AlterationBitMatrix matrix, int swapsPerEdge, SplittableRandom rnd)
+	{
+		AlterationBitMatrix m = matrix.copy();
+
+		// Edge list of the alterations
+		int n = m.getAlterationCount();
+		int[] eg = new int[n];
+		int[] es = new int[n];
+		int e = 0;
+		for (int g = 0; g < m.getGenes().length; g++)
+		{
+			long[] row = m.getRow(g);
+			for (int i = 0; i < row.length; i++)
+			{
+				long w = row[i];
+				while (w != 0)
+				{
+					eg[e] = g;
+					es[e++] = (i << 6) + Long.numberOfTrailingZeros(w);
+					w &= w - 1;
+				}
+			}
+		}
+
+		if (n < 2) return m;
+
+		long attempts = (long) swapsPerEdge * n;
+		for (long a = 0; a < attempts; a++)
+		{
+			int i = rnd.nextInt(n);
+			int j = rnd.nextInt(n);
+
+			int g1 = eg[i], s1 = es[i];
+			int g2 = eg[j], s2 = es[j];
+
+			if (g1 == g2 || s1 == s2 || m.get(g1, s2) || m.get(g2, s1)) continue;
+			if (!m.isAssayed(g1, s2) || !m.isAssayed(g2, s1)) continue;
+
+			int c1 = m.getCode(g1, s1);
+			int c2 = m.getCode(g2, s2);
+			m.clear(g1, s1);
+			m.clear(g2, s2);
+			m.set(g1, s2);
+			m.set(g2, s1);
+			m.setCode(g1, s2, c1);
+			m.setCode(g2, s1, c2);
+			es[i] = s2;
+			es[j] = s1;
+		}
+		return m;
+	}
+}
@@ -10,13 +10,34 @@ public class MutTuple
 	public String type;
 	public String value;
 
+	/**
+	 * Variant allele frequency, NaN if not known.
+	 */
+	public float vaf = Float.NaN;
+
+	/**
+	 * Residue position parsed from the protein change, -1 if there is none.
+	 */
+	public int position = -1;
+
 	public MutTuple(String type, String value)
 	{
 		this.type = type;
 		this.value = value;
 	}
 
+	public MutTuple(String type, String value, float vaf)
+	{
+		this(type, value);
+		this.vaf = vaf;
+	}
+
 	public boolean isDeleterious()
+	{
+		return isDeleterious(type, value);
+	}
+
+	public static boolean isDeleterious(String type, String value)
 	{
 		return value.contains("*") || value.contains("fs") || type.equals("Nonsense");
 	}
@@ -0,0 +1,205 @@
+package org.panda.resource.tcga;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Keeps mutation records in fixed-size slots of direct byte buffers, outside the Java heap, so that very large cohorts
+ * do not load the garbage collector. A record holds the gene, sample and type IDs, the residue position, the variant
+ * allele frequency, and a link to the previous record of the same gene. The accessors do not allocate.
+ *
+ * Gene, sample and type names are kept on the heap in dictionaries, which only grow with the number of distinct values.
+ * Records are addressed with their index, in the order they are added.
+ */
+public class MutationArena
+{
+	private static final int RECORD_SIZE = 24;
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	// Field offsets in a record
+	private static final int GENE = 0;
+	private static final int SAMPLE = 4;
+	private static final int POSITION = 8;
+	private static final int VAF = 12;
+	private static final int NEXT = 16;
+	private static final int TYPE = 20;
+
+	/**
+	 * Bit of the type field that marks a deleterious mutation.
+	 */
+	private static final int DELETERIOUS_BIT = 1 << 31;
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private int size;
+
+	private final NameDictionary genes = new NameDictionary();
+	private final NameDictionary samples = new NameDictionary();
+	private final NameDictionary types = new NameDictionary();
+
+	/**
+	 * Index of the last added record of each gene, which is the head of the gene's record chain.
+	 */
+	private int[] geneHead = new int[0];
+
+	/**
+	 * Adds a mutation record.
+	 * @param position residue position, or -1 if unknown
+	 * @param vaf variant allele frequency, or NaN if unknown
+	 * @param deleterious whether the mutation is deleterious, see {@link MutTuple#isDeleterious()}
+	 * @return index of the new record
+	 */
+	public int add(String gene, String sample, String type, int position, float vaf, boolean deleterious)
+	{
+		int g = genes.intern(gene);
+		int s = samples.intern(sample);
+		int t = types.intern(type);
+
+		if (g == geneHead.length)
+		{
+			geneHead = Arrays.copyOf(geneHead, Math.max(1024, g * 2));
+			Arrays.fill(geneHead, g, geneHead.length, -1);
+		}
+		int prev = geneHead[g];
+
+		if ((size >>> CHUNK_BITS) == chunks.size())
+		{
+			chunks.add(ByteBuffer.allocateDirect(RECORD_SIZE << CHUNK_BITS).order(ByteOrder.nativeOrder()));
+		}
+
+		ByteBuffer buf = chunk(size);
+		int off = offset(size);
+		buf.putInt(off + GENE, g);
+		buf.putInt(off + SAMPLE, s);
+		buf.putInt(off + POSITION, position);
+		buf.putFloat(off + VAF, vaf);
+		buf.putInt(off + NEXT, prev);
+		buf.putInt(off + TYPE, deleterious ? t | DELETERIOUS_BIT : t);
+
+		geneHead[g] = size;
+		return size++;
+	}
+
+	private ByteBuffer chunk(int i)
+	{
+		return chunks.get(i >>> CHUNK_BITS);
+	}
+
+	private static int offset(int i)
+	{
+		return (i & CHUNK_MASK) * RECORD_SIZE;
+	}
+
+	/**
+	 * @return number of records
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int getGeneID(int record)
+	{
+		return chunk(record).getInt(offset(record) + GENE);
+	}
+
+	public int getSampleID(int record)
+	{
+		return chunk(record).getInt(offset(record) + SAMPLE);
+	}
+
+	public int getTypeID(int record)
+	{
+		return chunk(record).getInt(offset(record) + TYPE) & ~DELETERIOUS_BIT;
+	}
+
+	public boolean isDeleterious(int record)
+	{
+		return (chunk(record).getInt(offset(record) + TYPE) & DELETERIOUS_BIT) != 0;
+	}
+
+	public int getPosition(int record)
+	{
+		return chunk(record).getInt(offset(record) + POSITION);
+	}
+
+	public float getVAF(int record)
+	{
+		return chunk(record).getFloat(offset(record) + VAF);
+	}
+
+	/**
+	 * @return the index of the last added record of the gene, or -1 if the gene has no records
+	 */
+	public int getFirstOfGene(int geneID)
+	{
+		return geneID < 0 || geneID >= genes.size() ? -1 : geneHead[geneID];
+	}
+
+	/**
+	 * Iterates the records of a gene, starting from {@link #getFirstOfGene(int)}.
+	 * @return the index of the previously added record of the same gene, or -1 if there is none
+	 */
+	public int getNextOfGene(int record)
+	{
+		return chunk(record).getInt(offset(record) + NEXT);
+	}
+
+	/**
+	 * @return the ID of the gene, or -1 if the gene has no records
+	 */
+	public int getGeneID(String gene)
+	{
+		return genes.getID(gene);
+	}
+
+	/**
+	 * @return the ID of the sample, or -1 if the sample has no records
+	 */
+	public int getSampleID(String sample)
+	{
+		return samples.getID(sample);
+	}
+
+	public String getGeneName(int geneID)
+	{
+		return genes.getName(geneID);
+	}
+
+	public String getSampleName(int sampleID)
+	{
+		return samples.getName(sampleID);
+	}
+
+	public String getTypeName(int typeID)
+	{
+		return types.getName(typeID);
+	}
+
+	public int getGeneCount()
+	{
+		return genes.size();
+	}
+
+	public int getSampleCount()
+	{
+		return samples.size();
+	}
+
+	/**
+	 * @return genes in the order they first appeared
+	 */
+	public Set<String> getGenes()
+	{
+		return genes.getNames();
+	}
+
+	/**
+	 * @return samples in the order they first appeared
+	 */
+	public Set<String> getSamples()
+	{
+		return samples.getNames();
+	}
+}
@@ -0,0 +1,73 @@
+package org.panda.resource.tcga;
+
+import java.util.*;
+
+/**
+ * Genomic coordinates and samples of the loaded mutations, in primitive arrays, for assigning mutations to genomic
+ * regions. Chromosome names are kept without the "chr" prefix.
+ */
+class MutationLoci
+{
+	private final NameDictionary chromosomes = new NameDictionary();
+	private final NameDictionary samples = new NameDictionary();
+
+	private int size;
+	private int[] chr = new int[1024];
+	private int[] start = new int[1024];
+	private int[] end = new int[1024];
+	private int[] sample = new int[1024];
+
+	void add(String chromosome, int start, int end, String sample)
+	{
+		if (size == chr.length)
+		{
+			this.chr = Arrays.copyOf(chr, size * 2);
+			this.start = Arrays.copyOf(this.start, size * 2);
+			this.end = Arrays.copyOf(this.end, size * 2);
+			this.sample = Arrays.copyOf(this.sample, size * 2);
+		}
+		this.chr[size] = chromosomes.intern(RegionIndex.normalizeChromosome(chromosome));
+		this.start[size] = start;
+		this.end[size] = end;
+		this.sample[size] = samples.intern(sample);
+		size++;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	String getChromosome(int i)
+	{
+		return chromosomes.getName(chr[i]);
+	}
+
+	int getStart(int i)
+	{
+		return start[i];
+	}
+
+	int getEnd(int i)
+	{
+		return end[i];
+	}
+
+	int getSampleID(int i)
+	{
+		return sample[i];
+	}
+
+	/**
+	 * @return the ID of the sample, or -1 if the sample has no mutations
+	 */
+	int getSampleID(String sample)
+	{
+		return samples.getID(sample);
+	}
+
+	int getSampleCount()
+	{
+		return samples.size();
+	}
+}
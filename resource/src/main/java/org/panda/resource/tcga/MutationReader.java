@@ -1,12 +1,13 @@
 package org.panda.resource.tcga;
 
+import org.panda.resource.HGNC;
 import org.panda.utility.statistics.Histogram;
-import org.panda.utility.statistics.Summary;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Reads and serves a TCGA mutation file.
@@ -15,10 +16,93 @@ import java.util.*;
  */
 public class MutationReader
 {
+	/**
+	 * Barcode lengths for collapsing TCGA aliquot barcodes to the patient, sample, or sample-vial level.
+	 */
+	public static final int PATIENT_BARCODE_LENGTH = 12;
+	public static final int SAMPLE_BARCODE_LENGTH = 15;
+	public static final int VIAL_BARCODE_LENGTH = 16;
+
 	private Map<String, Map<String, List<MutTuple>>> mutMap;
 
 	private Set<String> sampleSet;
 
+	/**
+	 * Gene and sample names read so far, so that the mutation map, the sample set and the call keys share one instance
+	 * of each name instead of keeping the instance of each line.
+	 */
+	private final NameDictionary geneNames = new NameDictionary();
+	private final NameDictionary sampleNames = new NameDictionary();
+
+	/**
+	 * Genes to keep while parsing. Null means no gene filtering.
+	 */
+	private Set<String> geneWhitelist;
+
+	/**
+	 * Samples to keep while parsing. Null means no sample filtering.
+	 */
+	private Set<String> sampleWhitelist;
+
+	/**
+	 * Memo of the symbol normalization, from the symbol in the file to the approved HGNC symbol. Null when symbols are
+	 * used as they are.
+	 */
+	private Map<String, String> symbolMemo;
+
+	/**
+	 * Length to truncate the sample barcodes. Zero or negative means barcodes are used as they are.
+	 */
+	private int barcodeLength;
+
+	/**
+	 * Columns of the alternative allele read count and the total read depth, used for the variant allele frequency.
+	 */
+	private String altCountColumn = "t_alt_count";
+	private String depthColumn = "t_depth";
+
+	/**
+	 * Mutations with a lower variant allele frequency or read depth are dropped while parsing. Zero means no threshold.
+	 */
+	private float minVAF;
+	private int minDepth;
+
+	/**
+	 * Off-heap storage of the mutations. When this is not null, mutations are kept here instead of the mutation map.
+	 */
+	private MutationArena arena;
+
+	/**
+	 * Genomic coordinates of the mutations, null when they are not read.
+	 */
+	private MutationLoci loci;
+
+	/**
+	 * Keys of the loaded calls, for collapsing duplicate calls, null when duplicates are kept.
+	 */
+	private Set<CallKey> callKeys;
+	private int duplicateCalls;
+	private int multiCenterCalls;
+
+	/**
+	 * Genes assayed in each sample, null when all genes are assayed in all samples.
+	 */
+	private CoverageMask coverage;
+
+	/**
+	 * Samples array of the last alteration array query, and the index of each arena sample in that array. Cached since
+	 * the same array is usually queried for every gene, and reset when the arena is replaced or gets more records.
+	 */
+	private String[] lastQueriedSamples;
+	private int[] lastSampleIndex;
+
+	/**
+	 * Mutation counts at the residue positions of each gene, updated while loading, and the sorted index made from them
+	 * at the end of each load.
+	 */
+	private final Map<String, IntCounter> positionCounts = new HashMap<>();
+	private ResiduePositionIndex positionIndex = new ResiduePositionIndex(positionCounts);
+
 	public MutationReader(String filename) throws IOException
 	{
 		this(filename, null);
@@ -32,17 +116,82 @@ public class MutationReader
 	}
 
 	public void load(String filename, Set<String> mutTypes) throws IOException
+	{
+		System.out.println("filename is: " + filename);
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename)))
+		{
+			load(reader, mutTypes);
+		}
+	}
+
+	/**
+	 * Loads the mutations in a single pass over the given reader, hence it can read from a pipe such as the standard
+	 * input. The header line has to come before the data lines, as it does in MAF files.
+	 */
+	public void load(BufferedReader reader, Set<String> mutTypes) throws IOException
+	{
+		String line = reader.readLine();
+		while (line != null && (line.startsWith("#") || !line.startsWith("Hugo_Symbol"))) line = reader.readLine();
+
+		int[] col = findColumns(line);
+		processLines(reader.lines(), col, mutTypes);
+	}
+
+	/**
+	 * Loads only the mutations of the given genes, using the {@link MafIndex} of the file, which is built and saved on
+	 * the first call. Only the rows of these genes are read, with positioned reads. The samples of the reader are all
+	 * the samples in the file that have a mutation of the given types, whether they have a mutation in these genes or
+	 * not. Other parse-time settings apply as they do in a full load.
+	 */
+	public void loadGenes(String filename, Set<String> mutTypes, Collection<String> genes) throws IOException
+	{
+		MafIndex index = MafIndex.get(filename);
+		Set<String> geneSet = new HashSet<>(genes);
+
+		// Symbols of the file are normalized before matching, so aliases of the genes are also read
+		int[] rows = index.getGenes().stream().filter(g -> geneSet.contains(normalizeSymbol(g)))
+			.map(index::getGeneRows).flatMapToInt(Arrays::stream).sorted().toArray();
+
+		if (sampleWhitelist != null)
+		{
+			rows = MafIndex.intersect(rows, index.getSamples().stream()
+				.filter(s -> sampleWhitelist.contains(truncateBarcode(s)))
+				.map(index::getSampleRows).flatMapToInt(Arrays::stream).sorted().toArray());
+		}
+
+		for (String sample : index.getSamples())
+		{
+			String s = truncateBarcode(sample);
+			if (sampleWhitelist != null && !sampleWhitelist.contains(s)) continue;
+			if (mutTypes == null || Arrays.stream(index.getSampleRows(sample))
+				.anyMatch(r -> mutTypes.contains(index.getType(r)))) sampleSet.add(sampleNames.canonical(s));
+		}
+
+		int[] col = findColumns(index.getHeader());
+		processLines(index.readRows(rows).stream(), col, mutTypes);
+	}
+
+	/**
+	 * Finds the columns in the MAF header line.
+	 * @return indices of type, sample, protein change, alternative allele count, depth, chromosome, start, end, tumor
+	 * allele and center columns, -1 for the missing
+	 */
+	private int[] findColumns(String line)
 	{
 		int typeInd = -1;
 		int sampleInd = -1;
 		int protChInd = -1;
+		int altCountInd = -1;
+		int depthInd = -1;
+		int chrInd = -1;
+		int startInd = -1;
+		int endInd = -1;
+		int alleleInd = -1;
+		int centerInd = -1;
 
-		Optional<String> opt = Files.lines(Paths.get(filename)).filter(l -> !l.startsWith("#"))
-			.filter(l -> l.startsWith("Hugo_Symbol")).findFirst();
-
-		if (opt.isPresent())
+		if (line != null)
 		{
-			String[] header = opt.get().split("\t");
+			String[] header = line.split("\t");
 			typeInd = indexOf(header, "Variant_Classification");
 			sampleInd = indexOf(header, "Tumor_Sample_Barcode");
 			protChInd = indexOf(header, "Protein_Change");
@@ -50,30 +199,187 @@ public class MutationReader
 			if (protChInd < 0) protChInd = indexOf(header, "AAChange");
 			if (protChInd < 0) protChInd = indexOf(header, "amino_acid_change");
 			if (protChInd < 0) protChInd = indexOf(header, "HGVSp_Short");
+			altCountInd = indexOf(header, altCountColumn);
+			depthInd = indexOf(header, depthColumn);
+			chrInd = indexOf(header, "Chromosome");
+			startInd = indexOf(header, "Start_Position");
+			endInd = indexOf(header, "End_Position");
+			alleleInd = indexOf(header, "Tumor_Seq_Allele2");
+			centerInd = indexOf(header, "Center");
+
+			if (loci != null && (chrInd < 0 || startInd < 0))
+			{
+				System.out.println("No genomic position columns in the mutation file. Mutations will not be in " +
+					"regions.");
+			}
+
+			if ((minVAF > 0 && altCountInd < 0) || ((minVAF > 0 || minDepth > 0) && depthInd < 0))
+			{
+				System.out.println("No read count columns in the mutation file. All mutations will fail the read " +
+					"count thresholds.");
+			}
 
 			if (protChInd < 0)
 			{
-				System.out.println("No protein change in file " + filename);
+				System.out.println("No protein change in the mutation file");
 //				return;
 			}
 
 		}
+		return new int[]{typeInd, sampleInd, protChInd, altCountInd, depthInd, chrInd, startInd, endInd, alleleInd,
+			centerInd};
+	}
 
-		processLines(filename, typeInd, sampleInd, protChInd, mutTypes);
+	/**
+	 * Restricts the loaded data to the given genes. Rows of other genes are dropped at parse time, before the row is
+	 * split, so memory scales with the gene panel. Samples of the dropped rows are still loaded as sequenced samples.
+	 * Has to be set before loading.
+	 * @param genes gene symbols to keep, or null to keep all
+	 */
+	public void setGeneWhitelist(Collection<String> genes)
+	{
+		this.geneWhitelist = genes == null ? null : new HashSet<>(genes);
 	}
 
-	private void processLines(String filename, int typeInd, int sampleInd, int protChInd,
-		Set<String> mutTypes) throws IOException
+	/**
+	 * Restricts the loaded data to the given samples. Rows of other samples are dropped at parse time. Has to be set
+	 * before loading.
+	 * @param samples sample barcodes to keep, or null to keep all
+	 */
+	public void setSampleWhitelist(Collection<String> samples)
 	{
-		System.out.println("filename is: " + filename);
-		Files.lines(Paths.get(filename)).filter(l -> !l.startsWith("#")).filter(l -> !l.startsWith("Hugo_Symbol"))
+		this.sampleWhitelist = samples == null ? null : new HashSet<>(samples);
+	}
+
+	/**
+	 * When set, the gene symbols in the file are converted to the latest approved HGNC symbols while parsing, and the
+	 * rows of outdated and alias symbols are merged under the approved symbol. Each distinct symbol is resolved only
+	 * once. Unrecognized symbols are kept as they are. Has to be set before loading.
+	 */
+	public void setNormalizeSymbols(boolean normalize)
+	{
+		this.symbolMemo = normalize ? new HashMap<>() : null;
+	}
+
+	private String normalizeSymbol(String symbol)
+	{
+		if (symbolMemo == null) return symbol;
+
+		String approved = symbolMemo.get(symbol);
+		if (approved == null)
+		{
+			approved = HGNC.get().getSymbol(symbol);
+			if (approved == null) approved = symbol;
+			symbolMemo.put(symbol, approved);
+		}
+		return approved;
+	}
+
+	/**
+	 * Truncates the sample barcodes to the given length while parsing, so that the aliquots of the same patient or
+	 * sample collapse into a single sample. Use one of the barcode length constants of this class. Sample whitelists
+	 * are matched against the truncated barcodes. Has to be set before loading.
+	 * @param length barcode length, or zero to use barcodes as they are
+	 */
+	public void setBarcodeLength(int length)
+	{
+		this.barcodeLength = length;
+	}
+
+	private String truncateBarcode(String barcode)
+	{
+		return barcodeLength > 0 && barcode.length() > barcodeLength ? barcode.substring(0, barcodeLength) : barcode;
+	}
+
+	/**
+	 * Sets the columns to read the variant allele frequency from, as alternative allele count / depth. Default columns
+	 * are t_alt_count and t_depth. Has to be set before loading.
+	 */
+	public void setReadCountColumns(String altCountColumn, String depthColumn)
+	{
+		this.altCountColumn = altCountColumn;
+		this.depthColumn = depthColumn;
+	}
+
+	/**
+	 * Mutations with a variant allele frequency lower than this are dropped while parsing, as well as the ones with
+	 * unknown frequency. Their samples are still counted as sequenced. Has to be set before loading.
+	 * @param minVAF minimum frequency, or zero for no threshold
+	 */
+	public void setMinVAF(float minVAF)
+	{
+		this.minVAF = minVAF;
+	}
+
+	/**
+	 * Mutations with a read depth lower than this are dropped while parsing, as well as the ones with unknown depth.
+	 * Their samples are still counted as sequenced. Has to be set before loading.
+	 * @param minDepth minimum depth, or zero for no threshold
+	 */
+	public void setMinDepth(int minDepth)
+	{
+		this.minDepth = minDepth;
+	}
+
+	/**
+	 * When set, mutations are kept in an off-heap {@link MutationArena} instead of heap objects, which keeps the
+	 * garbage collector load flat for very large cohorts. In this mode the reader serves the genes, the samples and the
+	 * alteration arrays, and the records through {@link #getArena()}, but not the mutation tuple lists and the
+	 * statistics that are derived from them. Has to be set before loading.
+	 */
+	public void setOffHeap(boolean offHeap)
+	{
+		this.arena = offHeap ? new MutationArena() : null;
+		resetArenaSampleIndex();
+	}
+
+	/**
+	 * When set, the Chromosome, Start_Position and End_Position columns of the mutations are kept in compact arrays, for
+	 * {@link #getRegionAlterationMatrix(RegionIndex, String[])}. Has to be set before loading.
+	 */
+	public void setReadGenomicPositions(boolean read)
+	{
+		this.loci = read ? new MutationLoci() : null;
+	}
+
+	/**
+	 * @return the off-heap mutation records, or null if the reader is not in off-heap mode
+	 */
+	public MutationArena getArena()
+	{
+		return arena;
+	}
+
+	private void checkOnHeap()
+	{
+		if (arena != null) throw new IllegalStateException("Mutation tuples are not available in off-heap mode.");
+	}
+
+	private void processLines(Stream<String> lines, int[] col, Set<String> mutTypes)
+	{
+		int typeInd = col[0];
+		int sampleInd = col[1];
+		int protChInd = col[2];
+		int altCountInd = col[3];
+		int depthInd = col[4];
+		int chrInd = col[5];
+		int startInd = col[6];
+		int endInd = col[7];
+		int alleleInd = col[8];
+		int centerInd = col[9];
+		int duplicatesBefore = duplicateCalls;
+		int multiCenterBefore = multiCenterCalls;
+
+		lines.filter(l -> !l.startsWith("#")).filter(l -> !l.startsWith("Hugo_Symbol"))
+			.filter(l -> sampleWhitelist == null || sampleWhitelist.contains(truncateBarcode(tokenAt(l, sampleInd))))
+			.filter(l -> geneWhitelist == null || keepGene(l, typeInd, sampleInd, mutTypes))
 			.map(l -> l.split("\t"))
 			.filter(t -> !t[0].isEmpty() && !t[0].equals("."))
 			.filter(t -> mutTypes == null || mutTypes.contains(t[typeInd]))
 			.forEach(token ->
 		{
-			String id = token[0];
-			String sample = token[sampleInd];
+			String id = geneNames.canonical(normalizeSymbol(token[0]));
+			String sample = sampleNames.canonical(truncateBarcode(token[sampleInd]));
 			sampleSet.add(sample);
 
 			String type = token[typeInd];
@@ -82,12 +388,236 @@ public class MutationReader
 			if (protCh.startsWith("p.")) protCh = protCh.substring(2);
 			else if (protCh.equals(".") || protCh.equals("NULL")) protCh = "";
 
-			MutTuple mut = new MutTuple(type, protCh);
+			int alt = altCountInd < 0 || token.length <= altCountInd ? -1 : parseCount(token[altCountInd]);
+			int depth = depthInd < 0 || token.length <= depthInd ? -1 : parseCount(token[depthInd]);
+			float vaf = alt >= 0 && depth > 0 ? alt / (float) depth : Float.NaN;
+
+			if ((minDepth > 0 && depth < minDepth) || (minVAF > 0 && !(vaf >= minVAF))) return;
+
+			int position = parsePosition(protCh);
+
+			if (callKeys != null)
+			{
+				// Same variant of the same sample, as called by another center or caller
+				int genomicPos = startInd < 0 || token.length <= startInd ? -1 : parseCount(token[startInd]);
+				String allele = alleleInd < 0 || token.length <= alleleInd ? protCh : token[alleleInd];
+
+				if ((genomicPos >= 0 || position >= 0 || !allele.isEmpty()) &&
+					!callKeys.add(new CallKey(id, sample, genomicPos >= 0 ? genomicPos : position, allele)))
+				{
+					duplicateCalls++;
+					return;
+				}
+			}
+
+			if (centerInd >= 0 && token.length > centerInd && multiCenter(token[centerInd])) multiCenterCalls++;
+
+			if (loci != null && chrInd >= 0 && startInd >= 0 && token.length > Math.max(chrInd, startInd))
+			{
+				int start = parseCount(token[startInd]);
+				int end = endInd < 0 || token.length <= endInd ? -1 : parseCount(token[endInd]);
+				if (start >= 0) loci.add(token[chrInd], start, Math.max(start, end), sample);
+			}
+
+			if (position >= 0) positionCounts.computeIfAbsent(id, k -> new IntCounter()).increment(position);
+
+			if (arena != null)
+			{
+				arena.add(id, sample, type, position, vaf, MutTuple.isDeleterious(type, protCh));
+				return;
+			}
+
+			MutTuple mut = new MutTuple(type, protCh, vaf);
+			mut.position = position;
 
 			if (!mutMap.containsKey(id)) mutMap.put(id, new HashMap<>());
 			if (!mutMap.get(id).containsKey(sample)) mutMap.get(id).put(sample, new ArrayList<>());
 			mutMap.get(id).get(sample).add(mut);
 		});
+
+		positionIndex = new ResiduePositionIndex(positionCounts);
+
+		// The arena may have new samples, and the sample set may have new sequenced samples
+		resetArenaSampleIndex();
+
+		// Samples of the coverage mask are sequenced, even if they have no mutations
+		if (coverage != null)
+		{
+			if (barcodeLength > 0) coverage = coverage.collapseSamples(this::truncateBarcode);
+			if (symbolMemo != null) coverage = coverage.renameGenes(this::normalizeSymbol);
+
+			for (String sample : coverage.getSamples())
+			{
+				if (sampleWhitelist == null || sampleWhitelist.contains(sample)) sampleSet.add(sample);
+			}
+		}
+
+		if (duplicateCalls > duplicatesBefore)
+		{
+			System.out.println("Collapsed " + (duplicateCalls - duplicatesBefore) + " duplicate calls.");
+		}
+		if (multiCenterCalls > multiCenterBefore)
+		{
+			System.out.println((multiCenterCalls - multiCenterBefore) + " loaded calls list more than one center.");
+		}
+	}
+
+	/**
+	 * Checks the gene of the line against the gene whitelist. The sample of a dropped line is still registered as
+	 * sequenced, with the same type filter of the loaded lines, so that the samples are the same with or without the
+	 * whitelist, and with {@link #loadGenes(String, Set, Collection)}.
+	 * @return whether the line is of a whitelisted gene
+	 */
+	private boolean keepGene(String line, int typeInd, int sampleInd, Set<String> mutTypes)
+	{
+		String gene = tokenAt(line, 0);
+		if (geneWhitelist.contains(normalizeSymbol(gene))) return true;
+
+		if (!gene.isEmpty() && !gene.equals(".") && (mutTypes == null || mutTypes.contains(tokenAt(line, typeInd))))
+		{
+			sampleSet.add(sampleNames.canonical(truncateBarcode(tokenAt(line, sampleInd))));
+		}
+		return false;
+	}
+
+	/**
+	 * Identity of a call, for finding the repeated calls of the same variant in the same sample.
+	 */
+	private static final class CallKey
+	{
+		final String gene;
+		final String sample;
+		final int position;
+		final String allele;
+
+		CallKey(String gene, String sample, int position, String allele)
+		{
+			this.gene = gene;
+			this.sample = sample;
+			this.position = position;
+			this.allele = allele;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof CallKey)) return false;
+			CallKey k = (CallKey) o;
+			return position == k.position && gene.equals(k.gene) && sample.equals(k.sample) && allele.equals(k.allele);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ((gene.hashCode() * 31 + sample.hashCode()) * 31 + position) * 31 + allele.hashCode();
+		}
+	}
+
+	/**
+	 * Whether to collapse the repeated calls of the same variant in the same sample into one mutation while parsing, as
+	 * multi-caller MAFs list a variant once for each center or caller. A call is identified with the gene, the sample,
+	 * the genomic start position (or the residue position if there is no Start_Position column), and the tumor allele
+	 * (or the protein change if there is no Tumor_Seq_Allele2 column). Off by default, since it changes the mutation
+	 * counts. Has to be set before loading.
+	 */
+	public void setCollapseDuplicateCalls(boolean collapse)
+	{
+		this.callKeys = collapse ? new HashSet<>() : null;
+	}
+
+	/**
+	 * Sets the genes that are assayed in each sample, for telling apart wild-type and not assayed genes with
+	 * {@link #getGeneCoverage(String, String[])}. Samples of the mask are taken as sequenced even if they have no
+	 * mutations. Their barcodes are truncated the same way with the barcodes in the file, and a sample whose aliquots
+	 * are on different panels is assayed for the genes of all of them. When symbols are normalized, the panel genes are
+	 * normalized the same way. Has to be set before loading.
+	 */
+	public void setCoverageMask(CoverageMask coverage)
+	{
+		this.coverage = coverage;
+	}
+
+	/**
+	 * Gets the samples where the gene is assayed.
+	 * @return bitset over the indices of the given samples, or null if there is no coverage mask and the gene is
+	 * assayed in all samples
+	 */
+	public long[] getGeneCoverage(String id, String[] samples)
+	{
+		return coverage == null ? null : coverage.getCoverage(id, samples);
+	}
+
+	/**
+	 * @return number of calls that are dropped as duplicates so far
+	 */
+	public int getDuplicateCallCount()
+	{
+		return duplicateCalls;
+	}
+
+	/**
+	 * @return number of loaded calls whose Center lists more than one center, which are already merged in the file
+	 */
+	public int getMultiCenterCallCount()
+	{
+		return multiCenterCalls;
+	}
+
+	/**
+	 * @return the index of the mutated residue positions of the genes, which is built while loading
+	 */
+	public ResiduePositionIndex getPositionIndex()
+	{
+		return positionIndex;
+	}
+
+	/**
+	 * Extracts a single tab-delimited field of the line without splitting the whole line.
+	 * @return the field, or an empty string if the line has fewer fields
+	 */
+	private static String tokenAt(String line, int index)
+	{
+		int start = 0;
+		for (int i = 0; i < index; i++)
+		{
+			start = line.indexOf('\t', start) + 1;
+			if (start == 0) return "";
+		}
+		int end = line.indexOf('\t', start);
+		return end < 0 ? line.substring(start) : line.substring(start, end);
+	}
+
+	/**
+	 * @return the first integer in the protein change, which is the residue position, or -1 if there is none
+	 */
+	static int parsePosition(String protCh)
+	{
+		int pos = -1;
+		for (int i = 0; i < protCh.length(); i++)
+		{
+			char c = protCh.charAt(i);
+			if (c >= '0' && c <= '9') pos = (pos < 0 ? 0 : pos * 10) + (c - '0');
+			else if (pos >= 0) break;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return the non-negative integer in the string, or -1 if it is not one or if it does not fit in an int
+	 */
+	static int parseCount(String s)
+	{
+		if (s.isEmpty()) return -1;
+		int v = 0;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			int d = c - '0';
+			if (v > (Integer.MAX_VALUE - d) / 10) return -1;
+			v = v * 10 + d;
+		}
+		return v;
 	}
 
 	private boolean multiCenter (String val)
@@ -102,6 +632,7 @@ public class MutationReader
 
 	public Set<String> getGenes()
 	{
+		if (arena != null) return arena.getGenes();
 		return mutMap.keySet();
 	}
 
@@ -115,10 +646,25 @@ public class MutationReader
 	}
 
 	/**
-	 * All samples have to be in this dataset. This method does not support "no data" conditions.
+	 * All samples have to be in this dataset. A gene that is not assayed in a sample is not mutated in the array. Use
+	 * {@link #getGeneCoverage(String, String[])} to tell it apart from wild-type.
 	 */
 	public boolean[] getGeneAlterationArray(String id, String[] samples)
 	{
+		if (arena != null)
+		{
+			int g = arena.getGeneID(id);
+			if (g < 0) return null;
+
+			int[] index = getArenaSampleIndex(samples);
+			boolean[] b = new boolean[samples.length];
+			for (int r = arena.getFirstOfGene(g); r >= 0; r = arena.getNextOfGene(r))
+			{
+				int i = index[arena.getSampleID(r)];
+				if (i >= 0) b[i] = true;
+			}
+			return b;
+		}
 		if (mutMap.containsKey(id))
 		{
 			boolean[] b = new boolean[samples.length];
@@ -135,6 +681,217 @@ public class MutationReader
 		return null;
 	}
 
+	/**
+	 * Finds the hotspot residues of each gene, which are the positions mutated at least the given number of times. Uses
+	 * the position index, so this does not go over the mutations again.
+	 * @return sorted hotspot positions of the genes that have any
+	 */
+	public Map<String, int[]> getHotspotPositions(int minRecurrence)
+	{
+		Map<String, int[]> hotspots = new HashMap<>();
+		for (String gene : positionIndex.getGenes())
+		{
+			int[] pos = positionIndex.getHotspots(gene, minRecurrence);
+			if (pos.length > 0) hotspots.put(gene, pos);
+		}
+		return hotspots;
+	}
+
+	/**
+	 * Gets the samples that have a mutation of the gene at one of the hotspot positions, or a deleterious mutation.
+	 * All samples have to be in this dataset.
+	 * @param hotspots sorted hotspot positions of the gene, or null to not use hotspots
+	 * @param truncating whether deleterious mutations count as alterations
+	 * @return alteration array, or null if the gene is not recognized
+	 */
+	public boolean[] getGeneAlterationArray(String id, String[] samples, int[] hotspots, boolean truncating)
+	{
+		boolean[] b = new boolean[samples.length];
+
+		if (arena != null)
+		{
+			int g = arena.getGeneID(id);
+			if (g < 0) return null;
+
+			int[] index = getArenaSampleIndex(samples);
+			for (int r = arena.getFirstOfGene(g); r >= 0; r = arena.getNextOfGene(r))
+			{
+				int i = index[arena.getSampleID(r)];
+				if (i >= 0 && !b[i]) b[i] = (truncating && arena.isDeleterious(r)) ||
+					isHotspot(hotspots, arena.getPosition(r));
+			}
+			return b;
+		}
+
+		List<MutTuple>[] muts = getMutations(id, samples);
+		if (muts == null) return null;
+
+		for (int i = 0; i < samples.length; i++)
+		{
+			if (muts[i] == null)
+				throw new IllegalArgumentException("Sample " + samples[i] + " does not have mutation data.");
+
+			for (MutTuple mut : muts[i])
+			{
+				if ((truncating && mut.isDeleterious()) || isHotspot(hotspots, mut.position))
+				{
+					b[i] = true;
+					break;
+				}
+			}
+		}
+		return b;
+	}
+
+	private static boolean isHotspot(int[] hotspots, int position)
+	{
+		return hotspots != null && position >= 0 && Arrays.binarySearch(hotspots, position) >= 0;
+	}
+
+	/**
+	 * Gets the highest variant allele frequency of the gene's mutations in each sample. All samples have to be in this
+	 * dataset.
+	 * @return frequencies, where 0 means not mutated and NaN means mutated with unknown frequency, or null if the gene
+	 * is not recognized
+	 */
+	public float[] getGeneMaxVAFArray(String id, String[] samples)
+	{
+		float[] v = new float[samples.length];
+
+		if (arena != null)
+		{
+			int g = arena.getGeneID(id);
+			if (g < 0) return null;
+
+			int[] index = getArenaSampleIndex(samples);
+			for (int r = arena.getFirstOfGene(g); r >= 0; r = arena.getNextOfGene(r))
+			{
+				int i = index[arena.getSampleID(r)];
+				if (i >= 0) v[i] = maxVAF(v[i], arena.getVAF(r));
+			}
+			return v;
+		}
+
+		List<MutTuple>[] muts = getMutations(id, samples);
+		if (muts == null) return null;
+
+		for (int i = 0; i < samples.length; i++)
+		{
+			if (muts[i] == null)
+				throw new IllegalArgumentException("Sample " + samples[i] + " does not have mutation data.");
+
+			for (MutTuple mut : muts[i])
+			{
+				v[i] = maxVAF(v[i], mut.vaf);
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Keeps the known frequency when there is one, so a mutation with unknown frequency does not hide a known one.
+	 */
+	private static float maxVAF(float current, float vaf)
+	{
+		if (Float.isNaN(vaf)) return current == 0 ? Float.NaN : current;
+		if (Float.isNaN(current)) return vaf;
+		return Math.max(current, vaf);
+	}
+
+	/**
+	 * Gets the number of mutations of the gene in each sample. All samples have to be in this dataset.
+	 * @return counts, or null if the gene is not recognized
+	 */
+	public short[] getGeneMutationCountArray(String id, String[] samples)
+	{
+		short[] c = new short[samples.length];
+
+		if (arena != null)
+		{
+			int g = arena.getGeneID(id);
+			if (g < 0) return null;
+
+			int[] index = getArenaSampleIndex(samples);
+			for (int r = arena.getFirstOfGene(g); r >= 0; r = arena.getNextOfGene(r))
+			{
+				int i = index[arena.getSampleID(r)];
+				if (i >= 0 && c[i] < Short.MAX_VALUE) c[i]++;
+			}
+			return c;
+		}
+
+		List<MutTuple>[] muts = getMutations(id, samples);
+		if (muts == null) return null;
+
+		for (int i = 0; i < samples.length; i++)
+		{
+			if (muts[i] == null)
+				throw new IllegalArgumentException("Sample " + samples[i] + " does not have mutation data.");
+
+			c[i] = (short) Math.min(muts[i].size(), Short.MAX_VALUE);
+		}
+		return c;
+	}
+
+	/**
+	 * Gets which samples have a mutation in each region, in a single pass over the mutations, where each mutation is
+	 * assigned to its regions with a binary search. All samples have to be in this dataset. Genomic positions have to be
+	 * read, see {@link #setReadGenomicPositions(boolean)}.
+	 * @return alteration arrays, in the order of regions
+	 */
+	public boolean[][] getRegionAlterationMatrix(RegionIndex regions, String[] samples)
+	{
+		if (loci == null) throw new IllegalStateException("Genomic positions are not read.");
+
+		int[] index = new int[loci.getSampleCount()];
+		Arrays.fill(index, -1);
+		for (int i = 0; i < samples.length; i++)
+		{
+			if (!sampleSet.contains(samples[i]))
+				throw new IllegalArgumentException("Sample " + samples[i] + " does not have mutation data.");
+
+			int s = loci.getSampleID(samples[i]);
+			if (s >= 0) index[s] = i;
+		}
+
+		boolean[][] b = new boolean[regions.size()][samples.length];
+		for (int m = 0; m < loci.size(); m++)
+		{
+			int i = index[loci.getSampleID(m)];
+			if (i >= 0)
+			{
+				regions.forEachOverlap(loci.getChromosome(m), loci.getStart(m), loci.getEnd(m), r -> b[r][i] = true);
+			}
+		}
+		return b;
+	}
+
+	private void resetArenaSampleIndex()
+	{
+		lastQueriedSamples = null;
+		lastSampleIndex = null;
+	}
+
+	private int[] getArenaSampleIndex(String[] samples)
+	{
+		if (samples != lastQueriedSamples)
+		{
+			int[] index = new int[arena.getSampleCount()];
+			Arrays.fill(index, -1);
+			for (int i = 0; i < samples.length; i++)
+			{
+				if (!sampleSet.contains(samples[i]))
+					throw new IllegalArgumentException("Sample " + samples[i] + " does not have mutation data.");
+
+				int s = arena.getSampleID(samples[i]);
+				if (s >= 0) index[s] = i;
+			}
+			lastSampleIndex = index;
+			lastQueriedSamples = samples;
+		}
+		return lastSampleIndex;
+	}
+
 	/**
 	 * @return Array of mutation tuples list. Returns null if id is not recognized. If a sample is not recognized, the
 	 * array contains null. An empty list as array element means no mutations in that sample. Do not modify the returned
@@ -142,6 +899,7 @@ public class MutationReader
 	 */
 	public List<MutTuple>[] getMutations(String id, String[] samples)
 	{
+		checkOnHeap();
 		if (!mutMap.containsKey(id)) return null;
 
 		List<MutTuple>[] list = new List[samples.length];
@@ -160,6 +918,7 @@ public class MutationReader
 
 	public void writeAsAlterationMatrix(String outFile) throws IOException
 	{
+		checkOnHeap();
 		List<String> samples = new ArrayList<>(getSamples());
 		Collections.sort(samples);
 		BufferedWriter writer = new BufferedWriter(new FileWriter(outFile));
@@ -185,34 +944,11 @@ public class MutationReader
 
 	private void printRecurrenceCounts()
 	{
-		int totalMut = 0;
-		int delMut = 0;
-		Map<String, Map<String, Integer>> cnt = new HashMap<>();
-		for (String gene : mutMap.keySet())
-		{
-			for (String sample : mutMap.get(gene).keySet())
-			{
-				List<MutTuple> list = mutMap.get(gene).get(sample);
-				for (MutTuple mut : list)
-				{
-					totalMut++;
-					if (mut.value.contains("*") || mut.value.contains("fs")) delMut++;
-					if (!cnt.containsKey(gene)) cnt.put(gene, new HashMap<>());
-					if (cnt.get(gene).containsKey(mut.value)) cnt.get(gene).put(mut.value, cnt.get(gene).get(mut.value) + 1);
-					else cnt.get(gene).put(mut.value, 1);
-				}
-			}
-		}
+		System.out.println("Global ratio of deleterious mutations = " + getOverallDelMutRatio());
 
-		System.out.println("Global ratio of deleterious mutations = " + (delMut / (double) totalMut));
-
-		final Map<String, Integer> best = new HashMap<>();
-		for (String gene : cnt.keySet())
-		{
-			best.put(gene, Summary.max(cnt.get(gene).values()));
-		}
+		final Map<String, Integer> best = getHighestRecurrenceCounts();
 
-		List<String> genes = new ArrayList<>(cnt.keySet());
+		List<String> genes = new ArrayList<>(positionIndex.getGenes());
 		Collections.sort(genes, (o1, o2) -> best.get(o2).compareTo(best.get(o1)));
 
 		Map<String, Double> dRat = getRatiosOfDeleteriousMutations();
@@ -230,33 +966,23 @@ public class MutationReader
 		h.print();
 	}
 
+	/**
+	 * Gets the highest number of mutations at a single residue position of each gene, from the position index. Genes
+	 * without any mutation with a known position have zero.
+	 */
 	public Map<String, Integer> getHighestRecurrenceCounts()
 	{
-		Map<String, Map<String, Integer>> cnt = new HashMap<>();
-		for (String gene : mutMap.keySet())
-		{
-			for (String sample : mutMap.get(gene).keySet())
-			{
-				List<MutTuple> mutTuples = mutMap.get(gene).get(sample);
-				for (MutTuple mut : mutTuples)
-				{
-					if (!cnt.containsKey(gene)) cnt.put(gene, new HashMap<>());
-					if (cnt.get(gene).containsKey(mut.value)) cnt.get(gene).put(mut.value, cnt.get(gene).get(mut.value) + 1);
-					else cnt.get(gene).put(mut.value, 1);
-				}
-			}
-		}
-
 		Map<String, Integer> highest = new HashMap<>();
-		for (String gene : cnt.keySet())
+		for (String gene : getGenes())
 		{
-			highest.put(gene, Summary.max(cnt.get(gene).values()));
+			highest.put(gene, positionIndex.getMaxRecurrence(gene));
 		}
 		return highest;
 	}
 
 	public Map<String, Double> getRatiosOfDeleteriousMutations()
 	{
+		checkOnHeap();
 		Map<String, Double> rat = new HashMap<>();
 		for (String gene : mutMap.keySet())
 		{
@@ -279,6 +1005,7 @@ public class MutationReader
 
 	public double getOverallDelMutRatio()
 	{
+		checkOnHeap();
 		int total = 0;
 		int del = 0;
 
@@ -300,6 +1027,7 @@ public class MutationReader
 
 	public Map<String, Integer> getMutatedSampleCounts()
 	{
+		checkOnHeap();
 		Map<String, Integer> cnt = new HashMap<>();
 		for (String gene : mutMap.keySet())
 		{
@@ -0,0 +1,207 @@
+package org.panda.resource.tcga;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Greedy search for mutually exclusively altered gene groups. A group is scored with its coverage (number of samples
+ * altered in any member) minus its overlap (the extra alterations in already covered samples). Starting from a seed
+ * gene, the group is extended with the gene that increases the score most, until no gene increases it or the group
+ * reaches the maximum size.
+ *
+ * Coverage of the group is kept as a bitset, so the gain of a candidate is the popcount of its row minus the covered
+ * samples. Seeds are searched in parallel.
+ */
+public class MutexGroupSearch
+{
+	public static final int DEFAULT_MAX_GROUP_SIZE = 5;
+
+	/**
+	 * A gene group with its scores.
+	 */
+	public static class Group
+	{
+		/**
+		 * Gene indices, in the order they are added.
+		 */
+		public final int[] genes;
+		public final int coverage;
+		public final int overlap;
+
+		Group(int[] genes, int coverage, int overlap)
+		{
+			this.genes = genes;
+			this.coverage = coverage;
+			this.overlap = overlap;
+		}
+
+		public int getScore()
+		{
+			return coverage - overlap;
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("usage: MutexGroupSearch matrix-file out-file [max-group-size]");
+			System.exit(1);
+		}
+
+		int maxSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_GROUP_SIZE;
+		AlterationBitMatrix matrix = AlterationBitMatrix.read(args[0]);
+		write(matrix, searchAll(matrix, maxSize), args[1]);
+	}
+
+	/**
+	 * Searches a group from each gene with an alteration.
+	 * @param maxSize maximum number of genes in a group, at least 1
+	 * @return distinct groups with at least two genes, in decreasing score
+	 */
+	public static List<Group> searchAll(AlterationBitMatrix matrix, int maxSize)
+	{
+		checkMaxSize(maxSize);
+
+		int[] counts = new int[matrix.getGenes().length];
+		for (int g = 0; g < counts.length; g++)
+		{
+			counts[g] = matrix.getGeneAlterationCount(g);
+		}
+		int[] candidates = getCandidates(counts);
+
+		List<Group> groups = IntStream.of(candidates).parallel()
+			.mapToObj(seed -> search(matrix, counts, candidates, seed, maxSize))
+			.filter(g -> g.genes.length > 1)
+			.collect(Collectors.toList());
+
+		// Different seeds can end up with the same group
+		Set<String> seen = new HashSet<>();
+		List<Group> distinct = new ArrayList<>();
+		for (Group group : groups)
+		{
+			int[] sorted = group.genes.clone();
+			Arrays.sort(sorted);
+			if (seen.add(Arrays.toString(sorted))) distinct.add(group);
+		}
+
+		distinct.sort((g1, g2) -> Integer.compare(g2.getScore(), g1.getScore()));
+		return distinct;
+	}
+
+	/**
+	 * Searches a group starting from the given seed gene.
+	 * @param maxSize maximum number of genes in the group, at least 1
+	 */
+	public static Group search(AlterationBitMatrix matrix, int seed, int maxSize)
+	{
+		checkMaxSize(maxSize);
+
+		int[] counts = new int[matrix.getGenes().length];
+		for (int g = 0; g < counts.length; g++)
+		{
+			counts[g] = matrix.getGeneAlterationCount(g);
+		}
+		return search(matrix, counts, getCandidates(counts), seed, maxSize);
+	}
+
+	private static void checkMaxSize(int maxSize)
+	{
+		if (maxSize < 1)
+		{
+			throw new IllegalArgumentException("Maximum group size has to be at least 1: " + maxSize);
+		}
+	}
+
+	/**
+	 * @return the altered genes in decreasing alteration count
+	 */
+	private static int[] getCandidates(int[] counts)
+	{
+		return IntStream.range(0, counts.length).filter(g -> counts[g] > 0).boxed()
+			.sorted((g1, g2) -> Integer.compare(counts[g2], counts[g1])).mapToInt(Integer::intValue).toArray();
+	}
+
+	private static Group search(AlterationBitMatrix matrix, int[] counts, int[] candidates, int seed, int maxSize)
+	{
+		long[] covered = matrix.getRow(seed).clone();
+		int coverage = counts[seed];
+		int overlap = 0;
+
+		int[] group = new int[maxSize];
+		group[0] = seed;
+		int size = 1;
+
+		while (size < maxSize)
+		{
+			int best = -1;
+			int bestGain = 0;
+			int bestDelta = 0;
+
+			for (int g : candidates)
+			{
+				// The score cannot increase more than the alteration count, and candidates are in decreasing count
+				if (counts[g] <= bestDelta) break;
+				if (contains(group, size, g)) continue;
+
+				long[] row = matrix.getRow(g);
+				int gain = 0;
+				for (int w = 0; w < row.length; w++)
+				{
+					gain += Long.bitCount(row[w] & ~covered[w]);
+				}
+
+				int delta = 2 * gain - counts[g];
+				if (delta > bestDelta)
+				{
+					best = g;
+					bestGain = gain;
+					bestDelta = delta;
+				}
+			}
+
+			if (best < 0) break;
+
+			long[] row = matrix.getRow(best);
+			for (int w = 0; w < row.length; w++)
+			{
+				covered[w] |= row[w];
+			}
+			coverage += bestGain;
+			overlap += counts[best] - bestGain;
+			group[size++] = best;
+		}
+
+		return new Group(Arrays.copyOf(group, size), coverage, overlap);
+	}
+
+	private static boolean contains(int[] group, int size, int gene)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			if (group[i] == gene) return true;
+		}
+		return false;
+	}
+
+	public static void write(AlterationBitMatrix matrix, List<Group> groups, String outFile) throws IOException
+	{
+		String[] genes = matrix.getGenes();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8))
+		{
+			writer.write("Score\tCoverage\tOverlap\tGenes");
+			for (Group group : groups)
+			{
+				writer.write("\n" + group.getScore() + "\t" + group.coverage + "\t" + group.overlap + "\t");
+				writer.write(Arrays.stream(group.genes).mapToObj(g -> genes[g]).collect(Collectors.joining(" ")));
+			}
+		}
+	}
+}
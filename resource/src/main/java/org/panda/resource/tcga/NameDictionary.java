@@ -0,0 +1,64 @@
+package org.panda.resource.tcga;
+
+import java.util.*;
+
+/**
+ * Dictionary of distinct names, such as genes or samples, that gives each name an integer ID in the order the names are
+ * first added. The first added instance of a name is kept, so that the repeated names that are parsed from a file can
+ * share one instance.
+ */
+class NameDictionary
+{
+	private final Map<String, Integer> ids = new LinkedHashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	/**
+	 * @return the ID of the name, which is added if it is new
+	 */
+	int intern(String name)
+	{
+		Integer id = ids.get(name);
+		if (id == null)
+		{
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the kept instance of the name, which is added if it is new
+	 */
+	String canonical(String name)
+	{
+		return names.get(intern(name));
+	}
+
+	/**
+	 * @return the ID of the name, or -1 if it is not added
+	 */
+	int getID(String name)
+	{
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	String getName(int id)
+	{
+		return names.get(id);
+	}
+
+	int size()
+	{
+		return names.size();
+	}
+
+	/**
+	 * @return names in the order they are added
+	 */
+	Set<String> getNames()
+	{
+		return Collections.unmodifiableSet(ids.keySet());
+	}
+}
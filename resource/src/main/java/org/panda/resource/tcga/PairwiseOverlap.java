@@ -0,0 +1,257 @@
+package org.panda.resource.tcga;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the overlap of altered samples for every gene pair of an alteration matrix, and tests each pair for
+ * co-occurrence and mutual exclusivity with a one-sided Fisher's exact test (hypergeometric tail). Only the pairs that
+ * pass the p-value threshold are kept.
+ *
+ * The samples of a pair are the ones where both genes are assayed, so that the NA cells of panel-sequenced samples are
+ * neither counted as unaltered nor in the population of the test.
+ *
+ * Gene rows are bitsets, so an overlap is the popcount of their AND. Pairs are processed in tiles of gene blocks that
+ * fit in the cache, and blocks of rows are distributed over a fork-join pool.
+ */
+public class PairwiseOverlap
+{
+	/**
+	 * Number of genes in a side of a tile.
+	 */
+	private static final int BLOCK = 64;
+
+	public static final double DEFAULT_PVAL_THRESHOLD = 0.01;
+
+	/**
+	 * A gene pair with a significant overlap or exclusivity.
+	 */
+	public static class Pair
+	{
+		public final int gene1;
+		public final int gene2;
+		public final int overlap;
+		public final double pval;
+
+		/**
+		 * True if the genes co-occur more than expected, false if they are mutually exclusive.
+		 */
+		public final boolean cooccurrence;
+
+		Pair(int gene1, int gene2, int overlap, double pval, boolean cooccurrence)
+		{
+			this.gene1 = gene1;
+			this.gene2 = gene2;
+			this.overlap = overlap;
+			this.pval = pval;
+			this.cooccurrence = cooccurrence;
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("usage: PairwiseOverlap matrix-file out-file [p-value-threshold]");
+			System.exit(1);
+		}
+
+		double thr = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_PVAL_THRESHOLD;
+		AlterationBitMatrix matrix = AlterationBitMatrix.read(args[0]);
+		write(matrix, compute(matrix, thr), args[1]);
+	}
+
+	/**
+	 * Finds the gene pairs whose co-occurrence or mutual exclusivity p-value is not greater than the threshold.
+	 */
+	public static List<Pair> compute(AlterationBitMatrix matrix, double pvalThreshold)
+	{
+		return ForkJoinPool.commonPool().invoke(new Kernel(matrix, pvalThreshold));
+	}
+
+	public static void write(AlterationBitMatrix matrix, List<Pair> pairs, String outFile) throws IOException
+	{
+		String[] genes = matrix.getGenes();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outFile), StandardCharsets.UTF_8))
+		{
+			writer.write("Gene1\tGene2\tOverlap\tP-value\tType");
+			for (Pair p : pairs)
+			{
+				writer.write("\n" + genes[p.gene1] + "\t" + genes[p.gene2] + "\t" + p.overlap + "\t" + p.pval + "\t" +
+					(p.cooccurrence ? "co-occurrence" : "exclusivity"));
+			}
+		}
+	}
+
+	/**
+	 * The task for a range of row blocks. Each row block is paired with itself and all the blocks after it.
+	 */
+	private static class Kernel extends RecursiveTask<List<Pair>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long[][] rows;
+		private final int[] counts;
+
+		/**
+		 * Assayed samples of each gene, where null is all samples.
+		 */
+		private final long[][] assayed;
+		private final double[] logFact;
+		private final double thr;
+		private final int fromBlock;
+		private final int toBlock;
+
+		Kernel(AlterationBitMatrix matrix, double thr)
+		{
+			int n = matrix.getGenes().length;
+			this.rows = new long[n][];
+			this.counts = new int[n];
+			this.assayed = new long[n][];
+			for (int g = 0; g < n; g++)
+			{
+				rows[g] = matrix.getRow(g);
+				counts[g] = matrix.getGeneAlterationCount(g);
+				assayed[g] = matrix.getAssayed(g);
+			}
+
+			int size = matrix.getSamples().length;
+			this.logFact = new double[size + 1];
+			for (int i = 1; i <= size; i++)
+			{
+				logFact[i] = logFact[i - 1] + Math.log(i);
+			}
+
+			this.thr = thr;
+			this.fromBlock = 0;
+			this.toBlock = (n + BLOCK - 1) / BLOCK;
+		}
+
+		private Kernel(Kernel parent, int fromBlock, int toBlock)
+		{
+			this.rows = parent.rows;
+			this.counts = parent.counts;
+			this.assayed = parent.assayed;
+			this.logFact = parent.logFact;
+			this.thr = parent.thr;
+			this.fromBlock = fromBlock;
+			this.toBlock = toBlock;
+		}
+
+		@Override
+		protected List<Pair> compute()
+		{
+			if (toBlock - fromBlock > 1)
+			{
+				int mid = (fromBlock + toBlock) >>> 1;
+				Kernel left = new Kernel(this, fromBlock, mid);
+				left.fork();
+				List<Pair> pairs = new Kernel(this, mid, toBlock).compute();
+				pairs.addAll(0, left.join());
+				return pairs;
+			}
+
+			List<Pair> pairs = new ArrayList<>();
+			if (fromBlock == toBlock) return pairs;
+
+			int n = rows.length;
+			int iFrom = fromBlock * BLOCK;
+			int iTo = Math.min(n, iFrom + BLOCK);
+
+			for (int jFrom = iFrom; jFrom < n; jFrom += BLOCK)
+			{
+				int jTo = Math.min(n, jFrom + BLOCK);
+
+				for (int i = iFrom; i < iTo; i++)
+				{
+					if (counts[i] == 0) continue;
+					long[] a = rows[i];
+
+					for (int j = Math.max(jFrom, i + 1); j < jTo; j++)
+					{
+						if (counts[j] == 0) continue;
+						long[] b = rows[j];
+
+						int overlap = 0;
+						for (int w = 0; w < a.length; w++)
+						{
+							overlap += Long.bitCount(a[w] & b[w]);
+						}
+
+						if (assayed[i] == null && assayed[j] == null)
+						{
+							test(i, j, overlap, logFact.length - 1, counts[i], counts[j], pairs);
+						}
+						else
+						{
+							// Only the samples where both genes are assayed
+							test(i, j, overlap, countAssayed(assayed[i], assayed[j], a.length),
+								count(a, assayed[j]), count(b, assayed[i]), pairs);
+						}
+					}
+				}
+			}
+			return pairs;
+		}
+
+		/**
+		 * @return number of bits in the row that are also in the mask, where a null mask has all bits
+		 */
+		private static int count(long[] row, long[] mask)
+		{
+			int cnt = 0;
+			for (int w = 0; w < row.length; w++)
+			{
+				cnt += Long.bitCount(mask == null ? row[w] : row[w] & mask[w]);
+			}
+			return cnt;
+		}
+
+		/**
+		 * @return number of samples in both masks, where a null mask has all samples
+		 */
+		private int countAssayed(long[] m1, long[] m2, int words)
+		{
+			if (m1 == null) return m2 == null ? logFact.length - 1 : count(m2, null);
+			if (m2 == null) return count(m1, null);
+			int cnt = 0;
+			for (int w = 0; w < words; w++)
+			{
+				cnt += Long.bitCount(m1[w] & m2[w]);
+			}
+			return cnt;
+		}
+
+		/**
+		 * Tests the overlap of genes i and j, which are altered in a and b of the given number of samples.
+		 */
+		private void test(int i, int j, int overlap, int size, int a, int b, List<Pair> pairs)
+		{
+			if (a == 0 || b == 0) return;
+
+			// Only the tail on the side of the observed overlap can be significant
+			boolean cooc = (long) overlap * size > (long) a * b;
+
+			int from = cooc ? overlap : Math.max(0, a + b - size);
+			int to = cooc ? Math.min(a, b) : overlap;
+
+			double base = logFact[a] + logFact[size - a] + logFact[b] + logFact[size - b] - logFact[size];
+			double pval = 0;
+
+			for (int x = from; x <= to; x++)
+			{
+				pval += Math.exp(base - logFact[x] - logFact[a - x] - logFact[b - x] - logFact[size - a - b + x]);
+				if (pval > thr) return;
+			}
+
+			pairs.add(new Pair(i, j, overlap, Math.min(1, pval), cooc));
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.panda.resource.tcga;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Genomic regions, such as cytobands, protein domains or custom BED regions, indexed for finding the regions that a
+ * mutation overlaps. Regions of each chromosome are sorted by start and laid out as an implicit balanced interval tree,
+ * where the middle of each range of the array is the root of that range, and each node keeps the maximum end in its
+ * subtree. A query skips every subtree that ends before the query or starts after it, so it takes O(log n) time plus
+ * the number of overlaps, even when long regions contain many short ones.
+ *
+ * Coordinates are 1-based and inclusive, as in MAF files. Chromosome names are compared without a "chr" prefix.
+ */
+public class RegionIndex
+{
+	private final List<String> names = new ArrayList<>();
+	private final List<String> chromosomes = new ArrayList<>();
+	private final List<int[]> ranges = new ArrayList<>();
+
+	/**
+	 * Arrays per chromosome, sorted by start: region starts, ends, maximum end in the subtree of each node, and region
+	 * indices.
+	 */
+	private Map<String, int[][]> index;
+
+	/**
+	 * Reads the regions in a BED file. The name column is used as the region name if present, with the chromosome
+	 * prefixed when the same name is used on different chromosomes, as with cytobands. Regions without a name are named
+	 * with their coordinates.
+	 */
+	public static RegionIndex readBED(String file) throws IOException
+	{
+		RegionIndex regions = new RegionIndex();
+		List<String[]> rows = new ArrayList<>();
+		Map<String, Set<String>> chrOfName = new HashMap<>();
+
+		for (String line : Files.readAllLines(Paths.get(file)))
+		{
+			if (line.isEmpty() || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser"))
+				continue;
+
+			String[] token = line.split("\t");
+			rows.add(token);
+			if (token.length > 3) chrOfName.computeIfAbsent(token[3], k -> new HashSet<>()).add(token[0]);
+		}
+
+		for (String[] token : rows)
+		{
+			// BED is 0-based and half-open
+			int start = Integer.parseInt(token[1]) + 1;
+			int end = Integer.parseInt(token[2]);
+
+			String name = token.length <= 3 ? token[0] + ":" + start + "-" + end :
+				chrOfName.get(token[3]).size() > 1 ? token[0] + ":" + token[3] : token[3];
+
+			regions.add(name, token[0], start, end);
+		}
+		return regions;
+	}
+
+	/**
+	 * Adds a region. Has to be called before any query.
+	 * @param start first position, 1-based
+	 * @param end last position, inclusive
+	 */
+	public synchronized void add(String name, String chromosome, int start, int end)
+	{
+		if (index != null) throw new IllegalStateException("Regions cannot be added after the index is used.");
+
+		names.add(name);
+		chromosomes.add(normalizeChromosome(chromosome));
+		ranges.add(new int[]{start, end});
+	}
+
+	/**
+	 * @return the chromosome name without the "chr" prefix
+	 */
+	public static String normalizeChromosome(String chromosome)
+	{
+		return chromosome.regionMatches(true, 0, "chr", 0, 3) ? chromosome.substring(3) : chromosome;
+	}
+
+	public int size()
+	{
+		return names.size();
+	}
+
+	public String getName(int region)
+	{
+		return names.get(region);
+	}
+
+	private synchronized Map<String, int[][]> getIndex()
+	{
+		if (index != null) return index;
+
+		Map<String, List<Integer>> byChr = new HashMap<>();
+		for (int i = 0; i < names.size(); i++)
+		{
+			byChr.computeIfAbsent(chromosomes.get(i), k -> new ArrayList<>()).add(i);
+		}
+
+		index = new HashMap<>();
+		for (String chr : byChr.keySet())
+		{
+			List<Integer> list = byChr.get(chr);
+			list.sort(Comparator.comparingInt(i -> ranges.get(i)[0]));
+
+			int[] starts = new int[list.size()];
+			int[] ends = new int[list.size()];
+			int[] maxEnds = new int[list.size()];
+			int[] ids = new int[list.size()];
+			for (int i = 0; i < ids.length; i++)
+			{
+				ids[i] = list.get(i);
+				starts[i] = ranges.get(ids[i])[0];
+				ends[i] = ranges.get(ids[i])[1];
+			}
+			fillMaxEnds(ends, maxEnds, 0, ids.length);
+			index.put(chr, new int[][]{starts, ends, maxEnds, ids});
+		}
+		return index;
+	}
+
+	/**
+	 * Fills the maximum end of the subtree of each node in the given range of the array.
+	 * @return maximum end in the range
+	 */
+	private static int fillMaxEnds(int[] ends, int[] maxEnds, int lo, int hi)
+	{
+		if (lo >= hi) return Integer.MIN_VALUE;
+		int mid = (lo + hi) >>> 1;
+		maxEnds[mid] = Math.max(ends[mid],
+			Math.max(fillMaxEnds(ends, maxEnds, lo, mid), fillMaxEnds(ends, maxEnds, mid + 1, hi)));
+		return maxEnds[mid];
+	}
+
+	/**
+	 * Finds the regions that overlap the given interval.
+	 * @param chromosome chromosome, normalized with {@link #normalizeChromosome(String)}
+	 * @param consumer receives the index of each overlapping region
+	 */
+	public void forEachOverlap(String chromosome, int start, int end, IntConsumer consumer)
+	{
+		int[][] chr = getIndex().get(chromosome);
+		if (chr != null) search(chr, 0, chr[0].length, start, end, consumer);
+	}
+
+	private static void search(int[][] chr, int lo, int hi, int start, int end, IntConsumer consumer)
+	{
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+
+			// Nothing in this subtree reaches the interval
+			if (chr[2][mid] < start) return;
+
+			search(chr, lo, mid, start, end, consumer);
+
+			// This node and the right subtree start after the interval
+			if (chr[0][mid] > end) return;
+
+			if (chr[1][mid] >= start) consumer.accept(chr[3][mid]);
+			lo = mid + 1;
+		}
+	}
+}
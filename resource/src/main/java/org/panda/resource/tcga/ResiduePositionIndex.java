@@ -0,0 +1,209 @@
+package org.panda.resource.tcga;
+
+import java.util.*;
+
+/**
+ * Mutated residue positions of each gene with their mutation counts, sorted by position. Counts are also kept as
+ * cumulative sums, so that the number of mutations in a residue window is found with two binary searches. Queries work
+ * on primitive arrays and do not box.
+ */
+public class ResiduePositionIndex
+{
+	private final Map<String, Integer> geneIndex = new HashMap<>();
+
+	/**
+	 * Sorted positions of each gene.
+	 */
+	private final int[][] positions;
+
+	/**
+	 * Mutation count at each position.
+	 */
+	private final int[][] counts;
+
+	/**
+	 * Number of mutations before each position, with the total at the end.
+	 */
+	private final int[][] cumulative;
+
+	private final int[] maxCount;
+
+	ResiduePositionIndex(Map<String, IntCounter> counters)
+	{
+		int n = counters.size();
+		positions = new int[n][];
+		counts = new int[n][];
+		cumulative = new int[n][];
+		maxCount = new int[n];
+
+		int g = 0;
+		for (Map.Entry<String, IntCounter> entry : counters.entrySet())
+		{
+			IntCounter counter = entry.getValue();
+			int[] pos = counter.getKeys(1);
+			int[] cnt = new int[pos.length];
+			int[] cum = new int[pos.length + 1];
+
+			for (int i = 0; i < pos.length; i++)
+			{
+				cnt[i] = counter.get(pos[i]);
+				cum[i + 1] = cum[i] + cnt[i];
+				if (cnt[i] > maxCount[g]) maxCount[g] = cnt[i];
+			}
+
+			positions[g] = pos;
+			counts[g] = cnt;
+			cumulative[g] = cum;
+			geneIndex.put(entry.getKey(), g++);
+		}
+	}
+
+	private int index(String gene)
+	{
+		Integer g = geneIndex.get(gene);
+		return g == null ? -1 : g;
+	}
+
+	/**
+	 * @return genes that have a mutation with a known position
+	 */
+	public Set<String> getGenes()
+	{
+		return Collections.unmodifiableSet(geneIndex.keySet());
+	}
+
+	/**
+	 * @return the sorted mutated positions of the gene. Do not modify the returned array.
+	 */
+	public int[] getPositions(String gene)
+	{
+		int g = index(gene);
+		return g < 0 ? new int[0] : positions[g];
+	}
+
+	/**
+	 * @return number of mutations at the position
+	 */
+	public int getCount(String gene, int position)
+	{
+		int g = index(gene);
+		if (g < 0) return 0;
+		int i = Arrays.binarySearch(positions[g], position);
+		return i < 0 ? 0 : counts[g][i];
+	}
+
+	/**
+	 * @return number of mutations of the gene with a known position
+	 */
+	public int getMutationCount(String gene)
+	{
+		int g = index(gene);
+		return g < 0 ? 0 : cumulative[g][positions[g].length];
+	}
+
+	/**
+	 * @return the highest number of mutations at a single position of the gene, 0 if the gene has no positions
+	 */
+	public int getMaxRecurrence(String gene)
+	{
+		int g = index(gene);
+		return g < 0 ? 0 : maxCount[g];
+	}
+
+	/**
+	 * @return sorted positions with at least the given number of mutations
+	 */
+	public int[] getHotspots(String gene, int minRecurrence)
+	{
+		int g = index(gene);
+		if (g < 0 || maxCount[g] < minRecurrence) return new int[0];
+
+		int[] hot = new int[positions[g].length];
+		int n = 0;
+		for (int i = 0; i < hot.length; i++)
+		{
+			if (counts[g][i] >= minRecurrence) hot[n++] = positions[g][i];
+		}
+		return Arrays.copyOf(hot, n);
+	}
+
+	/**
+	 * @return the k most mutated positions, in decreasing count, where ties are in increasing position
+	 */
+	public int[] getTopPositions(String gene, int k)
+	{
+		int g = index(gene);
+		if (g < 0 || k <= 0) return new int[0];
+
+		int[] cnt = counts[g];
+		int[] top = new int[Math.min(k, cnt.length)];
+		int n = 0;
+
+		// Insertion into a short sorted list of indices, since k is small
+		for (int i = 0; i < cnt.length; i++)
+		{
+			if (n == top.length && cnt[top[n - 1]] >= cnt[i]) continue;
+
+			int j = n < top.length ? n++ : n - 1;
+			while (j > 0 && cnt[top[j - 1]] < cnt[i])
+			{
+				top[j] = top[j - 1];
+				j--;
+			}
+			top[j] = i;
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			top[i] = positions[g][top[i]];
+		}
+		return top;
+	}
+
+	/**
+	 * @return number of mutations of the gene between the given positions, inclusive
+	 */
+	public int countInWindow(String gene, int from, int to)
+	{
+		int g = index(gene);
+		if (g < 0 || from > to) return 0;
+		return cumulative[g][bound(positions[g], to, true)] - cumulative[g][bound(positions[g], from, false)];
+	}
+
+	/**
+	 * Finds the residue window of the given width with the most mutations, for detecting clustered mutations.
+	 * @return the number of mutations in the densest window
+	 */
+	public int getMaxWindowCount(String gene, int width)
+	{
+		int g = index(gene);
+		if (g < 0) return 0;
+
+		int[] pos = positions[g];
+		int[] cum = cumulative[g];
+		int max = 0;
+		int end = 0;
+		for (int i = 0; i < pos.length; i++)
+		{
+			while (end < pos.length && pos[end] < pos[i] + width) end++;
+			max = Math.max(max, cum[end] - cum[i]);
+		}
+		return max;
+	}
+
+	/**
+	 * @return index of the first element that is greater than the key if inclusive, or not less than the key otherwise
+	 */
+	private static int bound(int[] a, int key, boolean inclusive)
+	{
+		int lo = 0;
+		int hi = a.length;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (a[mid] < key || (inclusive && a[mid] == key)) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+}
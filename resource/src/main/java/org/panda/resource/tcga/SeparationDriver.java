@@ -0,0 +1,219 @@
+package org.panda.resource.tcga;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs an {@link AlterationMatrixSeparator} operation on every cohort directory under a root directory, in parallel.
+ * The thread pool is bounded by both the number of cores and an I/O concurrency limit, since separations are mostly
+ * disk bound. A failure in one directory does not stop the others, and a timing report is printed at the end.
+ *
+ * The separation spec is one of:
+ * <pre>
+ * non-outliers[:whole-dir]       separateNonOutliers
+ * mutations:use-dir              separateMutations
+ * pieces:n[:whole-dir]           separate into n pieces
+ * chunks:a-b,c-d,...[:whole-dir] separate by sample alteration count ranges
+ * </pre>
+ * where the whole-dir is relative to each cohort directory and is "whole" by default. The analysis subdirectories are
+ * copied, or linked with the link mode (see {@link AlterationMatrixSeparator.CopyMode#LINK}).
+ */
+public class SeparationDriver
+{
+	public static final int DEFAULT_IO_CONCURRENCY = 4;
+
+	/**
+	 * An operation to run on a cohort directory.
+	 */
+	public interface DirectoryJob
+	{
+		void run(File dir) throws IOException;
+	}
+
+	/**
+	 * Outcome of the job in one directory.
+	 */
+	public static class Result
+	{
+		public final File dir;
+
+		/**
+		 * Start time of the job, as System.currentTimeMillis, and its duration.
+		 */
+		public final long start;
+		public final long millis;
+
+		public final Throwable error;
+
+		Result(File dir, long start, long millis, Throwable error)
+		{
+			this.dir = dir;
+			this.start = start;
+			this.millis = millis;
+			this.error = error;
+		}
+	}
+
+	private static final String USAGE = "usage: SeparationDriver root-dir spec [io-concurrency [copy|link]]";
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length < 2)
+		{
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		int io;
+		DirectoryJob job;
+		try
+		{
+			io = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_IO_CONCURRENCY;
+			AlterationMatrixSeparator.CopyMode mode = args.length > 3 ?
+				AlterationMatrixSeparator.CopyMode.valueOf(args[3].toUpperCase(Locale.ROOT)) :
+				AlterationMatrixSeparator.CopyMode.COPY;
+			job = parseSpec(args[1], mode);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Also a NumberFormatException, and an unknown copy mode
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		String input = getInputDir(args[1]);
+
+		List<Result> results = run(new File(args[0]), dir -> new File(dir, input + "/DataMatrix.txt").exists(), job,
+			getThreadCount(io));
+
+		printReport(results);
+		if (results.stream().anyMatch(r -> r.error != null)) System.exit(2);
+	}
+
+	/**
+	 * @return the number of threads for the given I/O concurrency, which is not more than the number of cores
+	 */
+	public static int getThreadCount(int ioConcurrency)
+	{
+		return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), ioConcurrency));
+	}
+
+	/**
+	 * Creates the job for the given separation spec.
+	 * @param mode how the analysis subdirectories are replicated
+	 */
+	public static DirectoryJob parseSpec(String spec, AlterationMatrixSeparator.CopyMode mode)
+	{
+		String[] t = spec.split(":");
+		String whole = t.length > (t[0].equals("non-outliers") ? 1 : 2) ? t[t.length - 1] : "whole";
+
+		switch (t[0])
+		{
+			case "non-outliers":
+				return dir -> AlterationMatrixSeparator.separateNonOutliers(dir.getPath(), dir.getPath() + "/" + whole,
+					mode);
+			case "mutations":
+				if (t.length < 2) break;
+				return dir -> AlterationMatrixSeparator.separateMutations(dir.getPath(), t[1], mode);
+			case "pieces":
+				if (t.length < 2) break;
+				int pieces = Integer.parseInt(t[1]);
+				return dir -> AlterationMatrixSeparator.separate(dir.getPath(), dir.getPath() + "/" + whole, pieces,
+					mode);
+			case "chunks":
+				if (t.length < 2) break;
+				String[] chunks = t[1].split(",");
+				return dir -> AlterationMatrixSeparator.separate(dir.getPath(), dir.getPath() + "/" + whole, chunks,
+					mode);
+		}
+		throw new IllegalArgumentException("Invalid separation spec: " + spec);
+	}
+
+	/**
+	 * @return the directory, relative to a cohort directory, that the spec reads the matrix from
+	 */
+	private static String getInputDir(String spec)
+	{
+		String[] t = spec.split(":");
+		if (t[0].equals("mutations")) return t.length > 1 ? t[1] : "";
+		return t.length > (t[0].equals("non-outliers") ? 1 : 2) ? t[t.length - 1] : "whole";
+	}
+
+	/**
+	 * Runs the job on each subdirectory of the root that passes the filter.
+	 * @return results in the order of directory names
+	 */
+	public static List<Result> run(File root, FileFilter filter, DirectoryJob job, int threads)
+		throws InterruptedException
+	{
+		File[] dirs = root.listFiles(f -> f.isDirectory() && filter.accept(f));
+		if (dirs == null) throw new IllegalArgumentException("Not a directory: " + root);
+		Arrays.sort(dirs);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<>();
+
+		for (File dir : dirs)
+		{
+			futures.add(executor.submit(() ->
+			{
+				long start = System.currentTimeMillis();
+				try
+				{
+					job.run(dir);
+					return new Result(dir, start, System.currentTimeMillis() - start, null);
+				}
+				catch (Exception | Error e)
+				{
+					return new Result(dir, start, System.currentTimeMillis() - start, e);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		List<Result> results = new ArrayList<>();
+		for (Future<Result> future : futures)
+		{
+			try
+			{
+				results.add(future.get());
+			}
+			catch (ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Prints the time of each directory, and the elapsed wall-clock time from the first job start to the last job end,
+	 * along with the sum of the directory times, which is what a sequential run would take.
+	 */
+	public static void printReport(List<Result> results)
+	{
+		List<Result> sorted = new ArrayList<>(results);
+		sorted.sort((r1, r2) -> Long.compare(r2.millis, r1.millis));
+
+		long total = 0;
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		int failed = 0;
+		for (Result r : sorted)
+		{
+			total += r.millis;
+			first = Math.min(first, r.start);
+			last = Math.max(last, r.start + r.millis);
+			if (r.error != null) failed++;
+			System.out.println(r.dir.getName() + "\t" + r.millis + " ms\t" +
+				(r.error == null ? "ok" : "FAILED: " + r.error));
+		}
+		long elapsed = results.isEmpty() ? 0 : last - first;
+		System.out.println(results.size() + " directories, " + failed + " failed, " + elapsed + " ms elapsed, " +
+			total + " ms summed over directories");
+	}
+}
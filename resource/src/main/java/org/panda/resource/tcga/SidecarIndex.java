@@ -0,0 +1,211 @@
+package org.panda.resource.tcga;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base of the indexes that are saved next to the file they index, as a sidecar file with the given suffix. A saved
+ * index is reused as long as the size and the modification time of the indexed file do not change, and it is rebuilt
+ * otherwise, or when the sidecar cannot be read.
+ *
+ * Loaded indexes are cached, keeping only the most recently used ones. Each index keeps one read channel to its file
+ * open, which is closed when the index leaves the cache, and opened again if the index is used after that.
+ */
+abstract class SidecarIndex implements Closeable
+{
+	/**
+	 * Number of indexes of each kind that are kept in memory.
+	 */
+	static final int MAX_CACHED = 16;
+
+	protected final File file;
+	protected final long size;
+	protected final long modified;
+
+	private FileChannel channel;
+
+	/**
+	 * @param size size of the file when it was indexed
+	 * @param modified modification time of the file when it was indexed
+	 */
+	protected SidecarIndex(File file, long size, long modified)
+	{
+		this.file = file;
+		this.size = size;
+		this.modified = modified;
+	}
+
+	/**
+	 * Reads the index of a file from its sidecar.
+	 */
+	interface Loader<T>
+	{
+		T load(File file, InputStream sidecar) throws IOException;
+	}
+
+	/**
+	 * Builds the index of a file.
+	 */
+	interface Builder<T>
+	{
+		T build(File file) throws IOException;
+	}
+
+	/**
+	 * @return a cache that keeps the most recently used indexes, and closes the others
+	 */
+	static <T extends SidecarIndex> Map<String, T> newCache()
+	{
+		return new LinkedHashMap<String, T>(MAX_CACHED * 2, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, T> eldest)
+			{
+				if (size() <= MAX_CACHED) return false;
+				eldest.getValue().close();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Gets the index of the given file from the cache, or from its sidecar if the sidecar is up to date, or builds the
+	 * index and saves its sidecar.
+	 */
+	static <T extends SidecarIndex> T get(String path, String suffix, Map<String, T> cache, Loader<T> loader,
+		Builder<T> builder) throws IOException
+	{
+		File f = new File(path).getAbsoluteFile();
+
+		synchronized (cache)
+		{
+			T index = cache.get(f.getPath());
+
+			if (index == null || !index.isUpToDate())
+			{
+				if (index != null) index.close();
+
+				index = load(f, suffix, loader);
+				if (index == null)
+				{
+					index = builder.build(f);
+					index.save(suffix);
+				}
+				cache.put(f.getPath(), index);
+			}
+			return index;
+		}
+	}
+
+	boolean isUpToDate()
+	{
+		return file.length() == size && file.lastModified() == modified;
+	}
+
+	/**
+	 * @return the index in the sidecar, or null if there is no sidecar, if it is for another version of the file, or if
+	 * it cannot be read
+	 */
+	private static <T extends SidecarIndex> T load(File f, String suffix, Loader<T> loader)
+	{
+		File sidecar = new File(f.getPath() + suffix);
+		if (!sidecar.exists()) return null;
+
+		try (InputStream in = new BufferedInputStream(new FileInputStream(sidecar)))
+		{
+			T index = loader.load(f, in);
+			return index != null && index.size == f.length() && index.modified == f.lastModified() ? index : null;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// Corrupt sidecar, will be rebuilt
+			return null;
+		}
+	}
+
+	void save(String suffix)
+	{
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file.getPath() + suffix)))
+		{
+			write(out);
+		}
+		catch (IOException e)
+		{
+			// The index still works in memory
+			System.err.println("Cannot write the index of " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the index in the format that the loader of the subclass reads.
+	 */
+	protected abstract void write(OutputStream out) throws IOException;
+
+	/**
+	 * Reads a count from a sidecar, checking that it is not negative and not more than the given limit, so that a
+	 * corrupt sidecar fails with an exception instead of allocating a huge array.
+	 */
+	static int readCount(DataInputStream in, long limit) throws IOException
+	{
+		int n = in.readInt();
+		if (n < 0 || n > limit) throw new IOException("Corrupt index, invalid count: " + n);
+		return n;
+	}
+
+	/**
+	 * Reads the given byte range of the indexed file with a positioned read.
+	 */
+	protected byte[] read(long offset, int length) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining())
+		{
+			try
+			{
+				if (getChannel().read(buf, offset + buf.position()) < 0)
+				{
+					throw new EOFException("File changed after indexing: " + file);
+				}
+			}
+			catch (ClosedByInterruptException e)
+			{
+				throw e;
+			}
+			catch (ClosedChannelException e)
+			{
+				// Closed by the cache in the meantime, the next read opens it again
+			}
+		}
+		return buf.array();
+	}
+
+	private synchronized FileChannel getChannel() throws IOException
+	{
+		if (channel == null || !channel.isOpen()) channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		return channel;
+	}
+
+	/**
+	 * Closes the read channel of the file. The index can still be used, and opens a new channel when needed.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (channel == null) return;
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing to do, the channel is not used anymore
+		}
+		channel = null;
+	}
+}
@@ -0,0 +1,160 @@
+package org.panda.resource.tcga;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that replicating the analysis subdirectories with links gives the same results as copying them, and that
+ * remapping the cell codes keeps the cells that it does not change.
+ */
+public class AlterationMatrixSeparatorTest
+{
+	private Path tmp;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tmp = Files.createTempDirectory("separator");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(tmp))
+		{
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+			{
+				Files.delete(path);
+			}
+		}
+	}
+
+	/**
+	 * Writes a whole matrix with an analysis subdirectory next to it.
+	 * @return the base directory
+	 */
+	private Path makeBase(String name) throws IOException
+	{
+		Path whole = tmp.resolve(name).resolve("whole");
+		Files.createDirectories(whole.resolve("analysis").resolve("sub"));
+
+		write(whole.resolve("DataMatrix.txt"),
+			"\tS1\tS2\tS3\tS4\tS5\tS6\n" +
+			"G1\t1\t0\t0\t1\t1\t1\n" +
+			"G2\t0\t0\t1\t1\t0\t1\n" +
+			"G3\t0\t0\t0\t0\t1\t1");
+		write(whole.resolve("analysis").resolve("parameters.txt"), "first-gene = G1\n");
+		write(whole.resolve("analysis").resolve("sub").resolve("ranked-groups.txt"), "G1\tG2\n");
+		return tmp.resolve(name);
+	}
+
+	private static void write(Path file, String content) throws IOException
+	{
+		Files.write(file, content.getBytes("UTF-8"));
+	}
+
+	/**
+	 * @return contents of the files under the directory, by relative path
+	 */
+	private static Map<String, String> readTree(Path dir) throws IOException
+	{
+		Map<String, String> tree = new TreeMap<>();
+		try (Stream<Path> paths = Files.walk(dir))
+		{
+			for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList()))
+			{
+				tree.put(dir.relativize(path).toString(), new String(Files.readAllBytes(path), "UTF-8"));
+			}
+		}
+		return tree;
+	}
+
+	private Path separate(String name, AlterationMatrixSeparator.CopyMode mode) throws IOException
+	{
+		Path base = makeBase(name);
+		String[] chunks = {"0-1", "2-3"};
+		AlterationMatrixSeparator.separate(base.toString(), base.resolve("whole").toString(), chunks, mode);
+		return base;
+	}
+
+	@Test
+	public void testLinkGivesSameResultsAsCopy() throws IOException
+	{
+		Path copied = separate("copy", AlterationMatrixSeparator.CopyMode.COPY);
+		Path linked = separate("link", AlterationMatrixSeparator.CopyMode.LINK);
+
+		Map<String, String> copyTree = readTree(copied);
+		assertTrue(copyTree.containsKey(path("0-1", "analysis", "parameters.txt")));
+		assertTrue(copyTree.containsKey(path("2-3", "analysis", "sub", "ranked-groups.txt")));
+		assertEquals(copyTree, readTree(linked));
+	}
+
+	@Test
+	public void testLinkLeavesTheSourceAsItIs() throws IOException
+	{
+		Path base = separate("link", AlterationMatrixSeparator.CopyMode.LINK);
+		Path source = base.resolve("whole").resolve("analysis").resolve("parameters.txt");
+
+		assertTrue(Files.getPosixFilePermissions(source).contains(PosixFilePermission.OWNER_WRITE));
+		for (String chunk : new String[]{"0-1", "2-3"})
+		{
+			assertTrue(Files.isSameFile(source, base.resolve(chunk).resolve("analysis").resolve("parameters.txt")));
+		}
+	}
+
+	@Test
+	public void testUnshareKeepsTheSourceIntact() throws IOException
+	{
+		Path base = separate("link", AlterationMatrixSeparator.CopyMode.LINK);
+		File file = base.resolve("0-1").resolve("analysis").resolve("parameters.txt").toFile();
+		Path source = base.resolve("whole").resolve("analysis").resolve("parameters.txt");
+
+		AlterationMatrixSeparator.unshare(file);
+		assertFalse(Files.isSameFile(file.toPath(), source));
+
+		try (Writer writer = new FileWriter(file))
+		{
+			writer.write("first-gene = G2\n");
+		}
+
+		assertEquals("first-gene = G1\n", new String(Files.readAllBytes(source), "UTF-8"));
+		assertEquals("first-gene = G1\n", new String(Files.readAllBytes(
+			base.resolve("2-3").resolve("analysis").resolve("parameters.txt")), "UTF-8"));
+	}
+
+	@Test
+	public void testSeparateMutationsKeepsEmptyCells() throws IOException
+	{
+		Path base = makeBase("mutations");
+		write(base.resolve("whole").resolve("DataMatrix.txt"),
+			"\tS1\tS2\tS3\r\n" +
+			"G1\t1\t2\t\r\n" +
+			"G2\t3\t0\t0\r\n" +
+			"G3\t4\t\t\r\n");
+
+		AlterationMatrixSeparator.separateMutations(base.toString(), "whole", AlterationMatrixSeparator.CopyMode.COPY);
+
+		assertEquals("\tS1\tS2\tS3\nG1\t1\t0\t\nG3\t1\t\t", new String(Files.readAllBytes(
+			base.resolve("mutations-only").resolve("DataMatrix.txt")), "UTF-8"));
+	}
+
+	private static String path(String first, String... more)
+	{
+		return Paths.get(first, more).toString();
+	}
+}
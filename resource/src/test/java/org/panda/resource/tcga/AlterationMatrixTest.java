@@ -0,0 +1,125 @@
+package org.panda.resource.tcga;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the loaded matrix gives the same results with the file based operations, on a matrix with short rows,
+ * empty cells and a repeated gene.
+ */
+public class AlterationMatrixTest
+{
+	private static final String MATRIX =
+		"\tA\tB\tC\tD\n" +
+		"G1\t1\t0\t2\t1\n" +
+		"G2\t0\t1\n" +
+		"G3\t1\t\t0\t\n" +
+		"G1\t0\t0\t0\t0\n" +
+		"G4\t\t1\t1\n" +
+		"G5\t0\tNA\t3\t5";
+
+	private Path dir;
+	private String file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("matrix");
+		file = dir.resolve("DataMatrix.txt").toString();
+		Files.write(dir.resolve("DataMatrix.txt"), MATRIX.getBytes("UTF-8"));
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		for (String name : new String[]{"DataMatrix.txt", "DataMatrix.txt" + MatrixRowIndex.SUFFIX, "a.txt", "b.txt"})
+		{
+			Files.deleteIfExists(dir.resolve(name));
+		}
+		Files.delete(dir);
+	}
+
+	private static String read(Path file) throws IOException
+	{
+		return new String(Files.readAllBytes(file), "UTF-8");
+	}
+
+	@Test
+	public void testSampleAlterationCounts() throws IOException
+	{
+		assertEquals(AlterationMatrixSeparator.readSampleAlterationCounts(file),
+			AlterationMatrix.read(file).getSampleAlterationCounts());
+	}
+
+	@Test
+	public void testWriteSubset() throws IOException
+	{
+		AlterationMatrix matrix = AlterationMatrix.read(file);
+		for (Set<String> samples : Arrays.asList(new HashSet<>(Arrays.asList("A", "B", "C", "D")),
+			new HashSet<>(Arrays.asList("B", "D"))))
+		{
+			AlterationMatrixSeparator.writeSubset(matrix, dir.resolve("a.txt").toString(), samples);
+			AlterationMatrixSeparator.writeSubset(file, dir.resolve("b.txt").toString(), samples);
+			assertEquals(read(dir.resolve("b.txt")), read(dir.resolve("a.txt")));
+		}
+	}
+
+	@Test
+	public void testSeparateMatchesFileBased() throws IOException
+	{
+		Path base = Files.createTempDirectory("separate");
+		try
+		{
+			String[] chunks = {"0-1", "2-3"};
+			AlterationMatrix matrix = AlterationMatrix.read(file);
+			Files.createDirectories(base.resolve("file"));
+			Files.createDirectories(base.resolve("loaded"));
+
+			AlterationMatrixSeparator.separate(base.resolve("file").toString(), dir.toString(), chunks,
+				AlterationMatrixSeparator.CopyMode.COPY);
+			AlterationMatrixSeparator.separate(base.resolve("loaded").toString(), matrix, chunks,
+				AlterationMatrixSeparator.CopyMode.COPY);
+			AlterationMatrixSeparator.separate(base.resolve("file").toString(), dir.toString(), 2,
+				AlterationMatrixSeparator.CopyMode.COPY);
+			AlterationMatrixSeparator.separate(base.resolve("loaded").toString(), matrix, 2,
+				AlterationMatrixSeparator.CopyMode.COPY);
+			AlterationMatrixSeparator.separateNonOutliers(base.resolve("file").toString(), dir.toString(),
+				AlterationMatrixSeparator.CopyMode.COPY);
+			AlterationMatrixSeparator.separateNonOutliers(base.resolve("loaded").toString(), matrix,
+				AlterationMatrixSeparator.CopyMode.COPY);
+
+			for (String sub : new String[]{"0-1", "2-3", "1", "2", "outliers-excluded"})
+			{
+				assertEquals(read(base.resolve("file").resolve(sub).resolve("DataMatrix.txt")),
+					read(base.resolve("loaded").resolve(sub).resolve("DataMatrix.txt")));
+			}
+		}
+		finally
+		{
+			try (Stream<Path> paths = Files.walk(base))
+			{
+				for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				{
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRepeatedGeneSelectsFirstRow() throws IOException
+	{
+		assertEquals(AlterationMatrixSeparator.selectSamplesWithGeneAlterationStatus(file, "G1", alt -> alt == 1),
+			AlterationMatrix.read(file).selectSamples("G1", alt -> alt == 1));
+	}
+}
@@ -0,0 +1,137 @@
+package org.panda.resource.tcga;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the MAF index answers the same from its sidecar as when it is built, and that a stale or corrupt sidecar
+ * is rebuilt.
+ */
+public class MafIndexTest
+{
+	private static final String MAF =
+		"#version 2.4\n" +
+		"Hugo_Symbol\tChromosome\tVariant_Classification\tTumor_Sample_Barcode\n" +
+		"TP53\t17\tMissense_Mutation\tS1\n" +
+		"KRAS\t12\tMissense_Mutation\tS2\n" +
+		".\t1\tIGR\tS1\n" +
+		"TP53\t17\tNonsense_Mutation\tS2\n" +
+		"PTEN\t10\tFrame_Shift_Del\tS1\n";
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("mafindex");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(dir))
+		{
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+			{
+				Files.delete(path);
+			}
+		}
+	}
+
+	private Path writeMAF(String name, String content) throws IOException
+	{
+		Path file = dir.resolve(name);
+		Files.write(file, content.getBytes("UTF-8"));
+		return file;
+	}
+
+	@Test
+	public void testBuild() throws IOException
+	{
+		MafIndex index = MafIndex.get(writeMAF("a.maf", MAF).toString());
+
+		assertEquals(new HashSet<>(Arrays.asList("TP53", "KRAS", "PTEN")), index.getGenes());
+		assertArrayEquals(new int[]{0, 2}, index.getGeneRows("TP53"));
+		assertArrayEquals(new int[]{0, 3}, index.getSampleRows("S1"));
+		assertArrayEquals(new int[]{0}, MafIndex.intersect(index.getGeneRows("TP53"), index.getSampleRows("S1")));
+		assertEquals("Nonsense_Mutation", index.getType(2));
+		assertTrue(index.getHeader().startsWith("Hugo_Symbol\t"));
+		assertEquals(Arrays.asList("TP53\t17\tMissense_Mutation\tS1", "PTEN\t10\tFrame_Shift_Del\tS1"),
+			index.readRows(index.getSampleRows("S1")));
+	}
+
+	@Test
+	public void testSidecarRoundTrip() throws IOException
+	{
+		Path a = writeMAF("a.maf", MAF);
+		MafIndex built = MafIndex.get(a.toString());
+
+		// A copy with the same size and time is not in the cache, so it is answered from the copied sidecar
+		Path b = dir.resolve("b.maf");
+		Files.copy(a, b, StandardCopyOption.COPY_ATTRIBUTES);
+		Path sidecar = dir.resolve("b.maf" + MafIndex.SUFFIX);
+		Files.copy(dir.resolve("a.maf" + MafIndex.SUFFIX), sidecar);
+		assertTrue(sidecar.toFile().setLastModified(1000));
+
+		MafIndex loaded = MafIndex.get(b.toString());
+		assertEquals(1000, sidecar.toFile().lastModified());
+
+		assertEquals(built.getGenes(), loaded.getGenes());
+		assertEquals(built.getSamples(), loaded.getSamples());
+		for (String gene : built.getGenes())
+		{
+			assertArrayEquals(built.getGeneRows(gene), loaded.getGeneRows(gene));
+			assertEquals(built.readRows(built.getGeneRows(gene)), loaded.readRows(loaded.getGeneRows(gene)));
+		}
+		assertEquals(built.getType(3), loaded.getType(3));
+	}
+
+	@Test
+	public void testStaleSidecarIsRebuilt() throws IOException
+	{
+		Path a = writeMAF("a.maf", MAF);
+		assertEquals(1, MafIndex.get(a.toString()).getGeneRows("KRAS").length);
+
+		writeMAF("a.maf", MAF + "KRAS\t12\tMissense_Mutation\tS3\n");
+		assertTrue(a.toFile().setLastModified(a.toFile().lastModified() + 2000));
+
+		MafIndex index = MafIndex.get(a.toString());
+		assertEquals(2, index.getGeneRows("KRAS").length);
+		assertEquals(Collections.singletonList("KRAS\t12\tMissense_Mutation\tS3"),
+			index.readRows(index.getSampleRows("S3")));
+	}
+
+	@Test
+	public void testCorruptSidecarIsRebuilt() throws IOException
+	{
+		Path a = writeMAF("a.maf", MAF);
+
+		// A sidecar that matches the file, but claims a negative number of rows
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(a + MafIndex.SUFFIX)))
+		{
+			out.writeInt(0x4D414649);
+			out.writeLong(a.toFile().length());
+			out.writeLong(a.toFile().lastModified());
+			out.writeLong(0);
+			out.writeInt(0);
+			out.writeInt(0);
+			out.writeInt(-5);
+		}
+
+		MafIndex index = MafIndex.get(a.toString());
+		assertArrayEquals(new int[]{0, 2}, index.getGeneRows("TP53"));
+	}
+}
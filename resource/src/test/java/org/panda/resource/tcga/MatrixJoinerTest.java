@@ -0,0 +1,113 @@
+package org.panda.resource.tcga;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the output codes of the matrix joiner, its handling of missing and not-assayed samples, and that unsorted
+ * inputs give the same result as sorted ones.
+ */
+public class MatrixJoinerTest
+{
+	private static final String MUTATIONS =
+		"\tS1\tS2\tS3\n" +
+		"BRAF\t0\t1\tNA\n" +
+		"EGFR\t1\t0\t0\n" +
+		"KRAS\t1\t0\tNA\n" +
+		"TP53\t1\t1\t0";
+
+	private static final String CNA =
+		"\tS2\tS1\tS4\n" +
+		"EGFR\t2\t-1\t0\n" +
+		"KRAS\t-2\t2\tNA\n" +
+		"MYC\t0\t2\t-2\n" +
+		"TP53\t-2\t0\t2";
+
+	/**
+	 * Same as the above, with the rows in another order and a repeated gene whose first row is the one to use.
+	 */
+	private static final String CNA_UNSORTED =
+		"\tS2\tS1\tS4\n" +
+		"TP53\t-2\t0\t2\n" +
+		"KRAS\t-2\t2\tNA\n" +
+		"MYC\t0\t2\t-2\n" +
+		"TP53\t2\t2\t2\n" +
+		"EGFR\t2\t-1\t0";
+
+	private static final String JOINED =
+		"\tS1\tS2\tS3\tS4\n" +
+		"BRAF\t0\t1\tNA\tNA\n" +
+		"EGFR\t1\t2\tNA\tNA\n" +
+		"KRAS\t4\t3\tNA\tNA\n" +
+		"MYC\t2\t0\tNA\t3\n" +
+		"TP53\t1\t5\tNA\t2";
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("joiner");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(dir))
+		{
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+			{
+				Files.delete(path);
+			}
+		}
+	}
+
+	private String join(String cna, int chunkRows) throws IOException
+	{
+		Path mut = dir.resolve("mut.txt");
+		Path cn = dir.resolve("cna.txt");
+		Path out = dir.resolve("out.txt");
+		Files.write(mut, MUTATIONS.getBytes("UTF-8"));
+		Files.write(cn, cna.getBytes("UTF-8"));
+
+		MatrixJoiner.join(new String[]{mut.toString(), cn.toString()},
+			new MatrixJoiner.Type[]{MatrixJoiner.Type.MUTATION, MatrixJoiner.Type.CNA}, out.toString(), chunkRows);
+		return new String(Files.readAllBytes(out), "UTF-8");
+	}
+
+	@Test
+	public void testCodes() throws IOException
+	{
+		assertEquals(JOINED, join(CNA, MatrixJoiner.SORT_CHUNK_ROWS));
+	}
+
+	@Test
+	public void testUnsortedInput() throws IOException
+	{
+		assertEquals(JOINED, join(CNA_UNSORTED, MatrixJoiner.SORT_CHUNK_ROWS));
+
+		// Two rows per run, so that the runs are merged
+		assertEquals(JOINED, join(CNA_UNSORTED, 2));
+	}
+
+	@Test
+	public void testNoSidecarFiles() throws IOException
+	{
+		join(CNA_UNSORTED, 2);
+		try (Stream<Path> paths = Files.list(dir))
+		{
+			assertEquals(new HashSet<>(Arrays.asList("mut.txt", "cna.txt", "out.txt")),
+				paths.map(p -> p.getFileName().toString()).collect(Collectors.toSet()));
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package org.panda.resource.tcga;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the shuffled matrices keep the alteration count of each gene and sample, keep the NA cells in place,
+ * carry the cell values with the alterations, and are written in the given layout.
+ */
+public class MatrixShufflerTest
+{
+	private static final String MATRIX =
+		"\tS1\tS2\tS3\tS4\tS5\tS6\n" +
+		"G1\t1\t0\t2\t0\t1\t0\n" +
+		"G2\t0\t1\t0\t3\tNA\t0\n" +
+		"G3\t1\t1\t0\t0\t0\tNA\n" +
+		"G4\t0\t0\t5\t1\t0\t1\n" +
+		"G5\tNA\t1\t0\t0\t1\t0";
+
+	private Path dir;
+	private String file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("shuffler");
+		file = dir.resolve("DataMatrix.txt").toString();
+		Files.write(dir.resolve("DataMatrix.txt"), MATRIX.getBytes("UTF-8"));
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		try (Stream<Path> paths = Files.walk(dir))
+		{
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+			{
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Test
+	public void testReadWrite() throws IOException
+	{
+		AlterationBitMatrix.read(file).write(dir.resolve("out.txt").toString());
+		assertEquals(MATRIX, new String(Files.readAllBytes(dir.resolve("out.txt")), "UTF-8"));
+	}
+
+	@Test
+	public void testDegreesAndNAArePreserved() throws IOException
+	{
+		AlterationBitMatrix matrix = AlterationBitMatrix.read(file);
+		int[] sampleCounts = matrix.getSampleAlterationCounts();
+		boolean changed = false;
+
+		for (long seed = 0; seed < 20; seed++)
+		{
+			AlterationBitMatrix m = MatrixShuffler.shuffle(matrix, 20, new SplittableRandom(seed));
+
+			assertArrayEquals(sampleCounts, m.getSampleAlterationCounts());
+			for (int g = 0; g < matrix.getGenes().length; g++)
+			{
+				assertEquals(matrix.getGeneAlterationCount(g), m.getGeneAlterationCount(g));
+				assertEquals(getAlteredValues(matrix, g), getAlteredValues(m, g));
+
+				for (int s = 0; s < matrix.getSamples().length; s++)
+				{
+					assertEquals(matrix.isAssayed(g, s), m.isAssayed(g, s));
+					assertFalse(!m.isAssayed(g, s) && m.get(g, s));
+					changed |= m.get(g, s) != matrix.get(g, s);
+				}
+			}
+		}
+		assertTrue(changed);
+	}
+
+	/**
+	 * @return sorted values of the altered cells of the gene
+	 */
+	private static List<String> getAlteredValues(AlterationBitMatrix m, int gene)
+	{
+		List<String> values = new ArrayList<>();
+		for (int s = 0; s < m.getSamples().length; s++)
+		{
+			if (m.get(gene, s)) values.add(m.getValue(gene, s));
+		}
+		Collections.sort(values);
+		return values;
+	}
+
+	@Test
+	public void testLayout() throws IOException, InterruptedException
+	{
+		String out = dir.resolve("out").toString();
+		MatrixShuffler.generate(file, out, "rep%d", 2, 7, 2);
+
+		for (int k = 1; k <= 2; k++)
+		{
+			assertTrue(Files.exists(dir.resolve("out").resolve("rep" + k).resolve("DataMatrix.txt")));
+		}
+
+		// The same seed gives the same replicates
+		MatrixShuffler.generate(file, out, "again%d", 2, 7, 1);
+		for (int k = 1; k <= 2; k++)
+		{
+			assertArrayEquals(Files.readAllBytes(dir.resolve("out").resolve("rep" + k).resolve("DataMatrix.txt")),
+				Files.readAllBytes(dir.resolve("out").resolve("again" + k).resolve("DataMatrix.txt")));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLayoutWithoutReplicateNumber() throws IOException, InterruptedException
+	{
+		MatrixShuffler.generate(file, dir.toString(), "shuffled", 1, 7, 1);
+	}
+}
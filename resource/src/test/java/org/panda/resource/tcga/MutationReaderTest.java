@@ -0,0 +1,95 @@
+package org.panda.resource.tcga;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the repeated calls of a variant are collapsed into one mutation, and that only the calls with the same
+ * gene, sample, position and allele are taken as repeated. Also checks the parsing of the count columns, and the
+ * queries of an off-heap reader after a second load.
+ */
+public class MutationReaderTest
+{
+	private static final String MAF =
+		"#version 2.4\n" +
+		"Hugo_Symbol\tVariant_Classification\tTumor_Sample_Barcode\tProtein_Change\tStart_Position\t" +
+			"Tumor_Seq_Allele2\tCenter\n" +
+		"TP53\tMissense_Mutation\tS1\tp.R175H\t100\tA\tbroad\n" +
+		"TP53\tMissense_Mutation\tS1\tp.R175H\t100\tA\tucsc\n" +
+		// Alleles with the same String hash code
+		"TP53\tMissense_Mutation\tS1\tp.R175H\t100\tAa\tbroad\n" +
+		"TP53\tMissense_Mutation\tS1\tp.R175H\t100\tBB\tbroad\n" +
+		"TP53\tMissense_Mutation\tS2\tp.R175H\t100\tA\tbroad\n" +
+		"KRAS\tMissense_Mutation\tS1\tp.G12D\t200\tA\tbroad\n" +
+		"KRAS\tMissense_Mutation\tS1\tp.G12D\t201\tA\tbroad";
+
+	private static final String[] SAMPLES = {"S1", "S2"};
+
+	private static MutationReader load(boolean collapse) throws IOException
+	{
+		MutationReader reader = new MutationReader(null);
+		reader.setCollapseDuplicateCalls(collapse);
+		reader.load(new BufferedReader(new StringReader(MAF)), null);
+		return reader;
+	}
+
+	@Test
+	public void testCollapseDuplicateCalls() throws IOException
+	{
+		MutationReader reader = load(true);
+		assertEquals(1, reader.getDuplicateCallCount());
+		assertArrayEquals(new int[]{3, 1}, toInt(reader.getGeneMutationCountArray("TP53", SAMPLES)));
+		assertArrayEquals(new int[]{2, 0}, toInt(reader.getGeneMutationCountArray("KRAS", SAMPLES)));
+	}
+
+	@Test
+	public void testKeepDuplicateCalls() throws IOException
+	{
+		MutationReader reader = load(false);
+		assertEquals(0, reader.getDuplicateCallCount());
+		assertArrayEquals(new int[]{4, 1}, toInt(reader.getGeneMutationCountArray("TP53", SAMPLES)));
+	}
+
+	@Test
+	public void testOffHeapSecondLoad() throws IOException
+	{
+		MutationReader reader = new MutationReader(null);
+		reader.setOffHeap(true);
+		reader.load(new BufferedReader(new StringReader(MAF)), null);
+		assertArrayEquals(new int[]{4, 1}, toInt(reader.getGeneMutationCountArray("TP53", SAMPLES)));
+
+		// A new sample in the arena, queried with the same samples array
+		reader.load(new BufferedReader(new StringReader(
+			"Hugo_Symbol\tVariant_Classification\tTumor_Sample_Barcode\tProtein_Change\n" +
+			"TP53\tMissense_Mutation\tS3\tp.R248Q\n" +
+			"TP53\tMissense_Mutation\tS1\tp.R248Q")), null);
+		assertArrayEquals(new int[]{5, 1}, toInt(reader.getGeneMutationCountArray("TP53", SAMPLES)));
+	}
+
+	@Test
+	public void testParseCount()
+	{
+		assertEquals(0, MutationReader.parseCount("0"));
+		assertEquals(42, MutationReader.parseCount("42"));
+		assertEquals(Integer.MAX_VALUE, MutationReader.parseCount("2147483647"));
+		assertEquals(-1, MutationReader.parseCount("2147483648"));
+		assertEquals(-1, MutationReader.parseCount("99999999999999999999"));
+		assertEquals(-1, MutationReader.parseCount("12.5"));
+		assertEquals(-1, MutationReader.parseCount(""));
+	}
+
+	private static int[] toInt(short[] s)
+	{
+		int[] v = new int[s.length];
+		for (int i = 0; i < s.length; i++)
+		{
+			v[i] = s[i];
+		}
+		return v;
+	}
+}
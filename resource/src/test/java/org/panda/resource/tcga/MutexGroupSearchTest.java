@@ -0,0 +1,77 @@
+package org.panda.resource.tcga;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the greedy mutex group search on a small matrix where the best groups can be worked out by hand.
+ */
+public class MutexGroupSearchTest
+{
+	private static AlterationBitMatrix getMatrix()
+	{
+		AlterationBitMatrix m = new AlterationBitMatrix(new String[]{"G1", "G2", "G3", "G4"},
+			new String[]{"S1", "S2", "S3", "S4", "S5", "S6"});
+
+		// G1, G2 and G3 are exclusive and cover all samples, G4 overlaps with G1
+		int[][] altered = {{0, 1, 2}, {3, 4}, {5}, {0, 1}};
+		for (int g = 0; g < altered.length; g++)
+		{
+			for (int s : altered[g])
+			{
+				m.set(g, s);
+			}
+		}
+		return m;
+	}
+
+	private static int[] sorted(int[] genes)
+	{
+		int[] s = genes.clone();
+		Arrays.sort(s);
+		return s;
+	}
+
+	@Test
+	public void testSearch()
+	{
+		MutexGroupSearch.Group group = MutexGroupSearch.search(getMatrix(), 0, 5);
+		assertArrayEquals(new int[]{0, 1, 2}, group.genes);
+		assertEquals(6, group.coverage);
+		assertEquals(0, group.overlap);
+
+		group = MutexGroupSearch.search(getMatrix(), 0, 2);
+		assertArrayEquals(new int[]{0, 1}, group.genes);
+		assertEquals(5, group.getScore());
+	}
+
+	@Test
+	public void testSearchAll()
+	{
+		List<MutexGroupSearch.Group> groups = MutexGroupSearch.searchAll(getMatrix(), 5);
+		assertEquals(2, groups.size());
+		assertArrayEquals(new int[]{0, 1, 2}, sorted(groups.get(0).genes));
+		assertEquals(6, groups.get(0).getScore());
+		assertArrayEquals(new int[]{1, 2, 3}, sorted(groups.get(1).genes));
+		assertEquals(5, groups.get(1).getScore());
+
+		// Groups of a single gene are not reported
+		assertTrue(MutexGroupSearch.searchAll(getMatrix(), 1).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxSize()
+	{
+		MutexGroupSearch.searchAll(getMatrix(), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxSizeForSeed()
+	{
+		MutexGroupSearch.search(getMatrix(), 0, -1);
+	}
+}
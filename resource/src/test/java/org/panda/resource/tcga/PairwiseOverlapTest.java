@@ -0,0 +1,81 @@
+package org.panda.resource.tcga;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the pairwise p-values against hand-computed hypergeometric tails, including a gene with NA cells, whose pairs
+ * are tested only over the samples where both genes are assayed.
+ */
+public class PairwiseOverlapTest
+{
+	private static final String[] GENES = {"G1", "G2", "G3", "G4"};
+	private static final String[] SAMPLES = {"S1", "S2", "S3", "S4", "S5", "S6"};
+
+	private static AlterationBitMatrix getMatrix()
+	{
+		AlterationBitMatrix m = new AlterationBitMatrix(GENES, SAMPLES);
+		int[][] altered = {{0, 1, 2}, {0, 1, 2}, {3, 4, 5}, {0, 1}};
+		for (int g = 0; g < altered.length; g++)
+		{
+			for (int s : altered[g])
+			{
+				m.set(g, s);
+			}
+		}
+		m.setNotAssayed(3, 2);
+		m.setNotAssayed(3, 3);
+		return m;
+	}
+
+	private static PairwiseOverlap.Pair find(List<PairwiseOverlap.Pair> pairs, int gene1, int gene2)
+	{
+		for (PairwiseOverlap.Pair p : pairs)
+		{
+			if (p.gene1 == gene1 && p.gene2 == gene2) return p;
+		}
+		fail("No pair for " + GENES[gene1] + " and " + GENES[gene2]);
+		return null;
+	}
+
+	@Test
+	public void testPValues()
+	{
+		List<PairwiseOverlap.Pair> pairs = PairwiseOverlap.compute(getMatrix(), 0.5);
+		assertEquals(6, pairs.size());
+
+		// 3 of 6 samples each, full overlap: C(3,3) C(3,0) / C(6,3)
+		PairwiseOverlap.Pair p = find(pairs, 0, 1);
+		assertTrue(p.cooccurrence);
+		assertEquals(3, p.overlap);
+		assertEquals(1 / 20D, p.pval, 1e-9);
+
+		// 3 of 6 samples each, no overlap: C(3,0) C(3,3) / C(6,3)
+		p = find(pairs, 0, 2);
+		assertFalse(p.cooccurrence);
+		assertEquals(0, p.overlap);
+		assertEquals(1 / 20D, p.pval, 1e-9);
+		assertEquals(1 / 20D, find(pairs, 1, 2).pval, 1e-9);
+	}
+
+	@Test
+	public void testNotAssayedSamplesAreLeftOut()
+	{
+		List<PairwiseOverlap.Pair> pairs = PairwiseOverlap.compute(getMatrix(), 0.5);
+
+		// G4 is not assayed in S3 and S4. Over the other 4 samples, G1 and G4 are both altered in 2, with full overlap:
+		// C(2,2) C(2,0) / C(4,2). Counting S3 and S4 as unaltered would give C(3,2) C(3,0) / C(6,2) instead.
+		PairwiseOverlap.Pair p = find(pairs, 0, 3);
+		assertTrue(p.cooccurrence);
+		assertEquals(2, p.overlap);
+		assertEquals(1 / 6D, p.pval, 1e-9);
+
+		// G3 is altered in S5 and S6 of the same 4 samples, with no overlap: C(2,0) C(2,2) / C(4,2)
+		p = find(pairs, 2, 3);
+		assertFalse(p.cooccurrence);
+		assertEquals(1 / 6D, p.pval, 1e-9);
+	}
+}
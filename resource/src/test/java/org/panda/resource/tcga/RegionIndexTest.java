@@ -0,0 +1,64 @@
+package org.panda.resource.tcga;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the overlap queries of the region index against a linear scan of the regions.
+ */
+public class RegionIndexTest
+{
+	@Test
+	public void testOverlapsMatchLinearScan()
+	{
+		Random rand = new Random(1);
+		RegionIndex index = new RegionIndex();
+		List<int[]> regions = new ArrayList<>();
+
+		// A long region that contains most of the short ones, as a chromosome arm does
+		index.add("arm", "chr1", 1, 1000000);
+		regions.add(new int[]{1, 1000000});
+
+		for (int i = 0; i < 2000; i++)
+		{
+			int start = rand.nextInt(1200000) + 1;
+			int end = start + (i % 100 == 0 ? 100000 : rand.nextInt(200));
+			index.add("r" + i, i % 2 == 0 ? "chr1" : "1", start, end);
+			regions.add(new int[]{start, end});
+		}
+
+		for (int q = 0; q < 1000; q++)
+		{
+			int start = rand.nextInt(1300000) + 1;
+			int end = start + rand.nextInt(50);
+
+			Set<Integer> found = new HashSet<>();
+			index.forEachOverlap("1", start, end, found::add);
+
+			Set<Integer> expected = new HashSet<>();
+			for (int i = 0; i < regions.size(); i++)
+			{
+				if (regions.get(i)[0] <= end && regions.get(i)[1] >= start) expected.add(i);
+			}
+			assertEquals(expected, found);
+		}
+	}
+
+	@Test
+	public void testNoOverlapOnOtherChromosome()
+	{
+		RegionIndex index = new RegionIndex();
+		index.add("a", "chr2", 10, 20);
+
+		Set<Integer> found = new HashSet<>();
+		index.forEachOverlap("1", 10, 20, found::add);
+		index.forEachOverlap("2", 21, 30, found::add);
+		assertTrue(found.isEmpty());
+
+		index.forEachOverlap("2", 20, 20, found::add);
+		assertEquals(Collections.singleton(0), found);
+	}
+}